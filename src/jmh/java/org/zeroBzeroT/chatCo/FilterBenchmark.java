@@ -0,0 +1,125 @@
+package org.zeroBzeroT.chatCo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the word blacklist per chat message, sequentially and without budgets:
+ * <ul>
+ * <li>clean - everyday chat that contains none of the words</li>
+ * <li>dirty - chat hiding one of the words behind substitutions, separators and omissions</li>
+ * <li>adversarial - long runs of random letters that make as many words as possible candidates</li>
+ * </ul>
+ * {@link #check} measures the full work of a message, {@link #containsBlacklistedWord} the path chat
+ * takes, where repeated messages are answered by the verdict cache. Run with {@code -prof gc} for
+ * the allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterBenchmark {
+    private static final String[] VOCABULARY = {"hey", "how", "are", "you", "doing", "today", "anyone", "want",
+        "to", "trade", "diamonds", "meet", "at", "spawn", "lol", "nice", "base", "where", "is", "the", "nether", "portal"};
+
+    @Param({"10", "1000", "10000"})
+    public int words;
+
+    @Param({"clean", "dirty", "adversarial"})
+    public String corpus;
+
+    private BlacklistFilter filter;
+    private String[] messages;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        List<String> list = new ArrayList<>(words);
+        for (int i = 0; i < words; i++) list.add(randomWord(random, 5 + random.nextInt(8)));
+
+        filter = new BlacklistFilter(list, 0.8, 0, 1);
+
+        messages = new String[256];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = switch (corpus) {
+                case "clean" -> chat(random);
+                case "dirty" -> chat(random) + ' ' + obfuscate(random, list.get(random.nextInt(list.size()))) + ' ' + chat(random);
+                case "adversarial" -> randomWord(random, 256);
+                default -> throw new IllegalArgumentException(corpus);
+            };
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        filter.close();
+    }
+
+    @Benchmark
+    public int check() {
+        return filter.check(messages[next++ & (messages.length - 1)]);
+    }
+
+    @Benchmark
+    public boolean containsBlacklistedWord() {
+        return filter.containsBlacklistedWord(messages[next++ & (messages.length - 1)]);
+    }
+
+    private static String chat(Random random) {
+        StringBuilder message = new StringBuilder();
+        for (int w = 3 + random.nextInt(6); w > 0; w--) {
+            message.append(VOCABULARY[random.nextInt(VOCABULARY.length)]).append(' ');
+        }
+        return message.toString().trim();
+    }
+
+    /** Disguise a word the ways the filter is meant to see through */
+    private static String obfuscate(Random random, String word) {
+        StringBuilder disguised = new StringBuilder();
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            switch (random.nextInt(6)) {
+                case 0 -> disguised.append(Character.toUpperCase(c));
+                case 1 -> disguised.append(c).append(random.nextBoolean() ? '.' : ' ');
+                case 2 -> disguised.append(c).append(c);
+                case 3 -> {
+                    // Leave out an inner letter; the first and last two are always kept
+                    if (i < 2 || i >= word.length() - 2) disguised.append(c);
+                }
+                default -> disguised.append(leet(c));
+            }
+        }
+        return disguised.toString();
+    }
+
+    private static char leet(char c) {
+        for (String group : BlacklistFilter.SUBSTITUTION_GROUPS) {
+            if (group.charAt(0) == c) return group.charAt(1);
+        }
+        return c;
+    }
+
+    private static String randomWord(Random random, int length) {
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < length; i++) word.append((char) ('a' + random.nextInt(26)));
+        return word.toString();
+    }
+}
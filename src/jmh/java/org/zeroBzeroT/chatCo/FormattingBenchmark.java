@@ -0,0 +1,83 @@
+package org.zeroBzeroT.chatCo;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the formatting steps every public chat message goes through. Colors use the
+ * default config and a player holding every color permission, looked up once as in chat, where
+ * the permissions are cached per player. Run with {@code -prof gc} for the allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormattingBenchmark {
+    @Param({"plain", "colored", "tagged"})
+    public String input;
+
+    private String message;
+    private ColorRewriter colors;
+    private long allowed;
+
+    @Setup
+    public void setup() throws Exception {
+        message = switch (input) {
+            case "plain" -> "hey anyone want to trade diamonds at spawn, meet me at the nether portal";
+            case "colored" -> "&ahey anyone &lwant &rto trade `diamonds §cat spawn, meet me &7at the nether portal";
+            case "tagged" -> "<GREEN>hey anyone <BOLD>want<RESET> to trade <AQUA>diamonds at <FOO>spawn, meet me at the nether portal";
+            default -> throw new IllegalArgumentException(input);
+        };
+
+        try (Reader reader = new InputStreamReader(Main.class.getResourceAsStream("/config.yml"), StandardCharsets.UTF_8)) {
+            colors = ChatConfig.load(YamlConfiguration.loadConfiguration(reader)).colors();
+        }
+        Player player = (Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[]{Player.class},
+            (proxy, method, args) -> method.getName().equals("hasPermission") ? Boolean.TRUE : null);
+        allowed = colors.permissions(player, new YamlConfiguration());
+    }
+
+    @Benchmark
+    public String parseFormattingTags() {
+        return Utils.parseFormattingTags(message);
+    }
+
+    @Benchmark
+    public String stripColor() {
+        return Utils.stripColor(message);
+    }
+
+    @Benchmark
+    public NormalizedMessage normalize() {
+        return NormalizedMessage.of(message);
+    }
+
+    @Benchmark
+    public boolean containsUnicode() {
+        return Utils.containsUnicode(message);
+    }
+
+    @Benchmark
+    public String rewriteColors() {
+        return colors.rewrite(message, allowed);
+    }
+}
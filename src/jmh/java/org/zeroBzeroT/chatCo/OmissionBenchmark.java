@@ -0,0 +1,128 @@
+package org.zeroBzeroT.chatCo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reversed and omission checks of one blacklist word: the regexes the filter used to compile versus
+ * the single-pass {@link FuzzyMatcher}. Inputs are skeletons, so normalization is not measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OmissionBenchmark {
+    @Param({"badwords", "motherfucker", "supercalifragilistic"})
+    public String word;
+
+    @Param({"clean", "omitted", "reversed"})
+    public String input;
+
+    private Pattern reversedPattern;
+    private Pattern omissionPattern;
+    private FuzzyMatcher matcher;
+    private long[] state;
+    private String[] messages;
+    private int next;
+
+    @Setup
+    public void setup() {
+        reversedPattern = createFuzzyPattern(new StringBuilder(word).reverse().toString());
+        omissionPattern = createOmissionPattern(word);
+
+        matcher = new FuzzyMatcher(word, BlacklistFilter.maxOmissions(word.length(), 0.8), true);
+        state = new long[matcher.stateSize()];
+
+        Random random = new Random(1);
+        List<String> generated = new ArrayList<>();
+        for (int i = 0; i < 256; i++) {
+            StringBuilder message = new StringBuilder();
+            for (int w = 0; w < 8; w++) {
+                for (int c = 2 + random.nextInt(6); c > 0; c--) message.append((char) ('a' + random.nextInt(26)));
+                message.append(' ');
+            }
+
+            switch (input) {
+                case "omitted" -> message.append(word, 0, 3).append(word.substring(4));
+                case "reversed" -> message.append(new StringBuilder(word).reverse());
+                default -> message.append(word, 0, word.length() / 2);
+            }
+            generated.add(message.append(" gg").toString());
+        }
+        messages = generated.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public boolean regex() {
+        String message = nextMessage();
+        return reversedPattern.matcher(message).find() || matchesWithOmission(message);
+    }
+
+    @Benchmark
+    public boolean matcher() {
+        return matcher.find(nextMessage(), state);
+    }
+
+    private String nextMessage() {
+        return messages[next++ & (messages.length - 1)];
+    }
+
+    // The regex path as it was before FuzzyMatcher
+
+    private boolean matchesWithOmission(String text) {
+        Matcher m = omissionPattern.matcher(text);
+        while (m.find()) {
+            int matchedChars = (int) m.group().chars().filter(Character::isLetterOrDigit).count();
+            if (matchedChars >= (word.length() * 0.8)) return true;
+        }
+        return false;
+    }
+
+    private static Pattern createFuzzyPattern(String word) {
+        StringBuilder regex = new StringBuilder("(?i)(?<![a-zA-Z0-9])");
+        for (int i = 0; i < word.length(); i++) {
+            regex.append("(?:").append(createAsciiSubstitutions(word.charAt(i))).append(")+");
+            if (i < word.length() - 1) regex.append("[\\s_.-]*");
+        }
+        regex.append("(?![a-zA-Z0-9])");
+        return Pattern.compile(regex.toString());
+    }
+
+    private static Pattern createOmissionPattern(String word) {
+        StringBuilder regex = new StringBuilder("(?i)(?<![a-zA-Z0-9])");
+        for (int i = 0; i < word.length(); i++) {
+            String charClass = createAsciiSubstitutions(word.charAt(i));
+            boolean required = (i < 2 || i >= word.length() - 2);
+            regex.append("(?:").append(charClass).append(required ? "+" : "*").append(")");
+            if (i < word.length() - 1) regex.append("[\\s_.-]*");
+        }
+        regex.append("(?![a-zA-Z0-9])");
+        return Pattern.compile(regex.toString());
+    }
+
+    private static String createAsciiSubstitutions(char c) {
+        char lower = Character.toLowerCase(c);
+        for (String group : BlacklistFilter.SUBSTITUTION_GROUPS) {
+            if (group.charAt(0) == lower) return "[" + group + "]";
+        }
+        return Pattern.quote(String.valueOf(c));
+    }
+}
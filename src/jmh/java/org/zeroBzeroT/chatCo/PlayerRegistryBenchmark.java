@@ -0,0 +1,180 @@
+package org.zeroBzeroT.chatCo;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The ChatPlayer registry against the one it replaced, a synchronized list scanned for every
+ * lookup, with 100 to 2000 players online:
+ * <ul>
+ * <li>chat: three threads look players up while one makes players quit and rejoin</li>
+ * <li>steady: four threads look players up, nobody joins or quits</li>
+ * <li>filterRecipients: the old recipient filter of public chat, which looked up every recipient
+ * of a message - O(online) lookups per message, so O(online^2) with the list. Public chat no
+ * longer does this (it asks the ignore index instead), so the concurrentMap row is an upper
+ * bound of the current cost.</li>
+ * </ul>
+ * The concurrentMap arm runs {@link ChatPlayerRegistry}, the code {@link Main} uses. Players are
+ * never loaded, so the ignore store is not involved.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlayerRegistryBenchmark {
+    @Param({"100", "500", "2000"})
+    public int players;
+
+    @Param({"concurrentMap", "synchronizedList"})
+    public String registry;
+
+    private Player[] online;
+    private Registry chatPlayers;
+
+    @Setup
+    public void setup() {
+        IgnoreIndex ignoreIndex = new IgnoreIndex();
+        chatPlayers = switch (registry) {
+            case "concurrentMap" -> new CurrentRegistry(new ChatPlayerRegistry(null, ignoreIndex, chatPlayer -> {
+            }));
+            case "synchronizedList" -> new ListRegistry(ignoreIndex);
+            default -> throw new IllegalArgumentException(registry);
+        };
+
+        online = new Player[players];
+        for (int i = 0; i < players; i++) {
+            UUID uuid = UUID.randomUUID();
+            String name = "Player" + i;
+            online[i] = (Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[]{Player.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getUniqueId" -> uuid;
+                    case "getName" -> name;
+                    default -> null;
+                });
+            chatPlayers.getOrCreate(online[i]);
+        }
+    }
+
+    /** Per-thread position in the player list, so threads do not walk it in lockstep */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next = (int) (Math.random() * Integer.MAX_VALUE);
+
+        int next(int bound) {
+            // Steps through every index in a scattered order; 7919 is prime and so coprime to bound
+            next = (next + 7919) & Integer.MAX_VALUE;
+            return next % bound;
+        }
+    }
+
+    @Benchmark
+    @Group("chat")
+    @GroupThreads(3)
+    public ChatPlayer lookup(Cursor cursor) {
+        return chatPlayers.getOrCreate(online[cursor.next(players)]);
+    }
+
+    @Benchmark
+    @Group("chat")
+    @GroupThreads(1)
+    public ChatPlayer rejoin(Cursor cursor) {
+        Player player = online[cursor.next(players)];
+        chatPlayers.remove(player);
+        return chatPlayers.getOrCreate(player);
+    }
+
+    @Benchmark
+    @Group("steady")
+    @GroupThreads(4)
+    public ChatPlayer steadyLookup(Cursor cursor) {
+        return chatPlayers.getOrCreate(online[cursor.next(players)]);
+    }
+
+    /** One message to everyone online, filtered the old way */
+    @Benchmark
+    @Group("filterRecipients")
+    @GroupThreads(4)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int filterRecipients(Cursor cursor) {
+        UUID sender = online[cursor.next(players)].getUniqueId();
+        int removed = 0;
+        for (Player recipient : online) {
+            ChatPlayer chatPlayer = chatPlayers.getOrCreate(recipient);
+            if (chatPlayer.chatDisabled || chatPlayer.isIgnored(sender)) removed++;
+        }
+        return removed;
+    }
+
+    private interface Registry {
+        ChatPlayer getOrCreate(Player p);
+
+        void remove(Player p);
+    }
+
+    private record CurrentRegistry(ChatPlayerRegistry registry) implements Registry {
+        @Override
+        public ChatPlayer getOrCreate(Player p) {
+            return registry.getOrCreate(p);
+        }
+
+        @Override
+        public void remove(Player p) {
+            registry.remove(p);
+        }
+    }
+
+    /**
+     * The registry before the map: a synchronized list scanned by UUID. The scan holds the list's
+     * lock, which the old loop needed to be safe against players joining and quitting meanwhile.
+     */
+    private static class ListRegistry implements Registry {
+        private final Collection<ChatPlayer> playerList = Collections.synchronizedCollection(new ArrayList<>());
+        private final IgnoreIndex ignoreIndex;
+
+        ListRegistry(IgnoreIndex ignoreIndex) {
+            this.ignoreIndex = ignoreIndex;
+        }
+
+        @Override
+        public ChatPlayer getOrCreate(Player p) {
+            synchronized (playerList) {
+                for (ChatPlayer chatPlayer : playerList) {
+                    if (chatPlayer.playerUUID.equals(p.getUniqueId())) {
+                        return chatPlayer;
+                    }
+                }
+
+                ChatPlayer created = new ChatPlayer(p, null, ignoreIndex);
+                playerList.add(created);
+                return created;
+            }
+        }
+
+        @Override
+        public void remove(Player p) {
+            playerList.removeIf(chatPlayer -> chatPlayer.playerUUID.equals(p.getUniqueId()));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.zeroBzeroT.chatCo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of one clean message - the case where every shard runs to the end - against large word
+ * lists, checked sequentially or split into shards. The verdict cache is bypassed.
+ * <p>
+ * Where the sharded rows drop below the sequential one is the list size to use as
+ * ChatCo.wordBlacklistParallelThreshold; it depends on the core count of the machine.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShardBenchmark {
+    @Param({"1000", "10000", "50000"})
+    public int words;
+
+    @Param({"1", "2", "4"})
+    public int shards;
+
+    private BlacklistFilter filter;
+    private String[] messages;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        List<String> list = new ArrayList<>(words);
+        for (int i = 0; i < words; i++) list.add(randomWord(random, 5 + random.nextInt(8)));
+
+        filter = new BlacklistFilter(list, 0.8, shards > 1 ? 1 : 0, shards);
+
+        // Short everyday words, so the pre-filter lets through about as much as real chat does
+        String[] vocabulary = {"hey", "how", "are", "you", "doing", "today", "anyone", "want", "to", "trade",
+            "diamonds", "meet", "at", "spawn", "lol", "nice", "base", "where", "is", "the", "nether", "portal"};
+        messages = new String[256];
+        for (int i = 0; i < messages.length; i++) {
+            StringBuilder message = new StringBuilder();
+            for (int w = 6 + random.nextInt(8); w > 0; w--) {
+                message.append(vocabulary[random.nextInt(vocabulary.length)]).append(' ');
+            }
+            messages[i] = message.toString().trim();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        filter.close();
+    }
+
+    @Benchmark
+    public int check() {
+        return filter.check(messages[next++ & (messages.length - 1)]);
+    }
+
+    private static String randomWord(Random random, int length) {
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < length; i++) word.append((char) ('a' + random.nextInt(26)));
+        return word.toString();
+    }
+}
@@ -0,0 +1,93 @@
+package org.zeroBzeroT.chatCo;
+
+import java.text.Normalizer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.icu.text.SpoofChecker;
+
+/**
+ * Skeleton of chat messages with ICU's SpoofChecker versus {@link Skeletonizer}: the ASCII table
+ * and, for messages with non-ASCII characters, the generated confusables table.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SkeletonBenchmark {
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyz abcdefghijklmnopqrstuvwxyz ABCDEFGHIJKLMNOPQRSTUVWXYZ 0123456789 .,!?'";
+
+    private static final String UNICODE = "абвгдеёжзийклмнопрстуфхцчшщъыьэюяΑΒΓΔΕΖΗΘΙΚΛΜΝΞΟΠΡΣΤΥΦΧΨΩａｂｃｄｅ𝐚𝐛𝐜ĀāĂăĄą";
+
+    private SpoofChecker spoofChecker;
+    private Skeletonizer skeletonizer;
+    private String[] messages;
+    private String[] unicodeMessages;
+    private int next;
+
+    @Setup
+    public void setup() {
+        spoofChecker = new SpoofChecker.Builder().build();
+        skeletonizer = new Skeletonizer();
+
+        Random random = new Random(1);
+        messages = new String[256];
+        unicodeMessages = new String[256];
+        for (int i = 0; i < messages.length; i++) {
+            StringBuilder message = new StringBuilder();
+            for (int c = 20 + random.nextInt(80); c > 0; c--) {
+                message.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+            messages[i] = message.toString();
+
+            // A few look-alikes mixed into otherwise ASCII text
+            for (int c = 1 + random.nextInt(4); c > 0; c--) {
+                int offset = UNICODE.offsetByCodePoints(0, random.nextInt(UNICODE.codePointCount(0, UNICODE.length())));
+                message.insert(random.nextInt(message.length()), Character.toChars(UNICODE.codePointAt(offset)));
+            }
+            unicodeMessages[i] = message.toString();
+        }
+    }
+
+    @Benchmark
+    public String icu() {
+        return icuSkeleton(nextMessage());
+    }
+
+    @Benchmark
+    public String table() {
+        return skeletonizer.skeleton(nextMessage());
+    }
+
+    @Benchmark
+    public String icuUnicode() {
+        return icuSkeleton(unicodeMessages[next++ & (unicodeMessages.length - 1)]);
+    }
+
+    @Benchmark
+    public String tableUnicode() {
+        return skeletonizer.skeleton(unicodeMessages[next++ & (unicodeMessages.length - 1)]);
+    }
+
+    private String icuSkeleton(String input) {
+        String normalized = Normalizer.normalize(input.toLowerCase(), Normalizer.Form.NFKC);
+        return spoofChecker.getSkeleton(normalized);
+    }
+
+    private String nextMessage() {
+        return messages[next++ & (messages.length - 1)];
+    }
+}
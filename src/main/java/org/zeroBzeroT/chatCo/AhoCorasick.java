@@ -0,0 +1,223 @@
+package org.zeroBzeroT.chatCo;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton over a fixed set of keys. Finds every occurrence of every key in one pass
+ * over the text, independent of the number of keys.
+ * <p>
+ * Transitions are stored as sorted arrays per state, with a dense table for ASCII at the root where
+ * most scans restart. The trie is built from the sorted keys, so rebuilding it is cheap enough to
+ * do for every change of the key set.
+ */
+public class AhoCorasick {
+    private static final int[] NO_OUTPUT = new int[0];
+
+    private final char[][] edgeChars;
+    private final int[][] edgeTargets;
+    private final int[] fail;
+    private final int[][] outputs;
+    private final int[] rootAscii;
+
+    /**
+     * @param keys - the keys to search for; the index of a key in this list is its id
+     */
+    public AhoCorasick(List<String> keys) {
+        // Insert in sorted order: a key then shares the path of its predecessor up to their common
+        // prefix and only appends children, so every child list stays sorted without maps
+        Integer[] order = new Integer[keys.size()];
+        int capacity = 1;
+        for (int id = 0; id < order.length; id++) {
+            order[id] = id;
+            capacity += keys.get(id).length();
+        }
+        Arrays.sort(order, (a, b) -> keys.get(a).compareTo(keys.get(b)));
+
+        rootAscii = new int[128];
+        char[] label = new char[capacity];
+        int[] firstChild = new int[capacity];
+        int[] lastChild = new int[capacity];
+        int[] nextSibling = new int[capacity];
+        int[] childCount = new int[capacity];
+        int[] firstTerminal = new int[capacity];
+        int[] nextTerminal = new int[order.length];
+        Arrays.fill(firstTerminal, -1);
+
+        int states = 1;
+        int[] path = new int[capacity];
+        String previous = "";
+
+        for (int id : order) {
+            String key = keys.get(id);
+            if (key.isEmpty()) continue;
+
+            int common = 0;
+            int limit = Math.min(key.length(), previous.length());
+            while (common < limit && key.charAt(common) == previous.charAt(common)) common++;
+
+            int state = path[common];
+            for (int i = common; i < key.length(); i++) {
+                int child = states++;
+                label[child] = key.charAt(i);
+                if (childCount[state]++ == 0) firstChild[state] = child;
+                else nextSibling[lastChild[state]] = child;
+                lastChild[state] = child;
+                state = child;
+                path[i + 1] = state;
+            }
+
+            nextTerminal[id] = firstTerminal[state];
+            firstTerminal[state] = id;
+            previous = key;
+        }
+
+        edgeChars = new char[states][];
+        edgeTargets = new int[states][];
+        fail = new int[states];
+        outputs = new int[states][];
+
+        for (int s = 0; s < states; s++) {
+            edgeChars[s] = new char[childCount[s]];
+            edgeTargets[s] = new int[childCount[s]];
+            int child = firstChild[s];
+            for (int i = 0; i < childCount[s]; i++) {
+                edgeChars[s][i] = label[child];
+                edgeTargets[s][i] = child;
+                child = nextSibling[child];
+            }
+        }
+
+        for (int i = 0; i < edgeChars[0].length; i++) {
+            if (edgeChars[0][i] < 128) rootAscii[edgeChars[0][i]] = edgeTargets[0][i];
+        }
+
+        // Breadth-first so every failure target is finished before it is used
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        outputs[0] = NO_OUTPUT;
+        for (int target : edgeTargets[0]) {
+            fail[target] = 0;
+            outputs[target] = merge(firstTerminal[target], nextTerminal, NO_OUTPUT);
+            queue[tail++] = target;
+        }
+
+        while (head < tail) {
+            int state = queue[head++];
+            for (int i = 0; i < edgeChars[state].length; i++) {
+                char c = edgeChars[state][i];
+                int target = edgeTargets[state][i];
+
+                int f = fail[state];
+                while (f != 0 && child(f, c) < 0) f = fail[f];
+                fail[target] = Math.max(child(f, c), 0);
+
+                outputs[target] = merge(firstTerminal[target], nextTerminal, outputs[fail[target]]);
+                queue[tail++] = target;
+            }
+        }
+    }
+
+    private AhoCorasick(ByteBuffer in) {
+        int states = in.getInt();
+        edgeChars = new char[states][];
+        edgeTargets = new int[states][];
+        outputs = new int[states][];
+        int[][] own = new int[states][];
+
+        for (int s = 0; s < states; s++) {
+            edgeChars[s] = BlacklistCache.readChars(in);
+            edgeTargets[s] = BlacklistCache.readInts(in);
+            own[s] = BlacklistCache.readInts(in);
+        }
+
+        fail = BlacklistCache.readInts(in);
+        rootAscii = BlacklistCache.readInts(in);
+
+        // Inherit outputs breadth-first as the builder does, so the arrays are shared again
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        outputs[0] = NO_OUTPUT;
+        queue[tail++] = 0;
+
+        while (head < tail) {
+            int state = queue[head++];
+            for (int target : edgeTargets[state]) {
+                int[] inherited = outputs[fail[target]];
+                if (own[target].length == 0) {
+                    outputs[target] = inherited;
+                } else {
+                    outputs[target] = Arrays.copyOf(inherited, inherited.length + own[target].length);
+                    System.arraycopy(own[target], 0, outputs[target], inherited.length, own[target].length);
+                }
+                queue[tail++] = target;
+            }
+        }
+    }
+
+    /**
+     * Write the automaton, see {@link #read}. Only the keys ending in a state itself are written,
+     * the ones it inherits through its failure link are restored when reading.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(edgeChars.length);
+        for (int s = 0; s < edgeChars.length; s++) {
+            BlacklistCache.writeChars(out, edgeChars[s]);
+            BlacklistCache.writeInts(out, edgeTargets[s]);
+            int inherited = s == 0 ? 0 : outputs[fail[s]].length;
+            BlacklistCache.writeInts(out, Arrays.copyOfRange(outputs[s], inherited, outputs[s].length));
+        }
+        BlacklistCache.writeInts(out, fail);
+        BlacklistCache.writeInts(out, rootAscii);
+    }
+
+    /**
+     * Read an automaton written by {@link #write} without building it again
+     */
+    public static AhoCorasick read(ByteBuffer in) {
+        return new AhoCorasick(in);
+    }
+
+    /**
+     * Advance the automaton by one character; scans start in state 0
+     */
+    public int next(int state, char c) {
+        while (true) {
+            int next = state == 0 && c < 128 ? rootAscii[c] : child(state, c);
+            if (next > 0) return next;
+            if (state == 0) return 0;
+            state = fail[state];
+        }
+    }
+
+    /**
+     * Get the ids of the keys ending at the current position of a scan
+     *
+     * @return a shared array, do not modify
+     */
+    public int[] outputs(int state) {
+        return outputs[state];
+    }
+
+    private int child(int state, char c) {
+        int index = Arrays.binarySearch(edgeChars[state], c);
+        return index >= 0 ? edgeTargets[state][index] : -1;
+    }
+
+    /** Append the ids of a state's own keys, chained through next, to the inherited ones */
+    private static int[] merge(int first, int[] next, int[] inherited) {
+        if (first < 0) return inherited;
+        int count = 0;
+        for (int id = first; id >= 0; id = next[id]) count++;
+
+        int[] merged = Arrays.copyOf(inherited, inherited.length + count);
+        int i = inherited.length;
+        for (int id = first; id >= 0; id = next[id]) merged[i++] = id;
+        return merged;
+    }
+}
@@ -1,9 +1,9 @@
 package org.zeroBzeroT.chatCo;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 
 import org.bukkit.configuration.ConfigurationSection;
@@ -14,7 +14,7 @@ import org.bukkit.plugin.java.JavaPlugin;
 public class BlackholeModule implements Listener {
 
     private static JavaPlugin plugin = null;
-    private static final Map<String, List<String>> playerSettings = new HashMap<>();
+    private static final Map<String, List<String>> playerSettings = new ConcurrentHashMap<>();
     private static final String HIDDEN_SETTING = "hidden";
 
     public BlackholeModule(JavaPlugin plugin) {
@@ -30,7 +30,7 @@ public class BlackholeModule implements Listener {
         }
         playerSettings.put(uuid, settings);
 
-        // Immediately update config
+        // Update config in memory; Main.saveConfig writes it out in the background
         plugin.getConfig().set("blacklist_settings." + uuid, settings);
         plugin.saveConfig();
     }
@@ -65,7 +65,7 @@ public class BlackholeModule implements Listener {
 
         playerSettings.put(uuid, settings);
 
-        // Immediately update config
+        // Update config in memory; Main.saveConfig writes it out in the background
         plugin.getConfig().set("blacklist_settings." + uuid, settings);
         plugin.saveConfig();
     }
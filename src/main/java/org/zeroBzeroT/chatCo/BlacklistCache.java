@@ -0,0 +1,176 @@
+package org.zeroBzeroT.chatCo;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Binary file holding the compiled blacklist, so enabling the plugin does not have to compile every
+ * word again.
+ * <p>
+ * The file carries a key - a hash of everything the compiled form depends on - and a CRC32 of its
+ * payload. The caller decides what to do with a file whose key no longer matches; a damaged file
+ * reads as missing. Writes go through a temporary file that atomically replaces the old one.
+ */
+public class BlacklistCache {
+    private static final int MAGIC = 0x4343424C; // "CCBL"
+    private static final int VERSION = 1;
+    private static final int KEY_SIZE = 32;
+    private static final int HEADER_SIZE = 4 + 4 + KEY_SIZE + 4;
+
+    private final Path file;
+    private final Path tempFile;
+
+    public BlacklistCache(File file) {
+        this.file = file.toPath();
+        this.tempFile = file.toPath().resolveSibling(file.getName() + ".tmp");
+    }
+
+    /**
+     * Hash the inputs of a compiled blacklist
+     *
+     * @param version - bumped whenever the compiled form changes
+     */
+    public static byte[] key(String version, double similarity, List<String> words) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(version.getBytes(StandardCharsets.UTF_8));
+            digest.update(ByteBuffer.allocate(Long.BYTES).putLong(Double.doubleToLongBits(similarity)).array());
+            for (String word : words) {
+                // Length-prefixed so no two word lists hash the same input
+                digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(word.length()).array());
+                digest.update(word.getBytes(StandardCharsets.UTF_8));
+            }
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Read the whole file
+     *
+     * @return the key and the payload positioned at its start, or null if there is no intact file
+     */
+    public Contents load() throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + 4 || size > Integer.MAX_VALUE) return null;
+
+            buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) return null;
+            }
+            buffer.flip();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return null;
+
+        byte[] key = new byte[KEY_SIZE];
+        buffer.get(key);
+        int length = buffer.getInt();
+        if (length < 0 || length != buffer.remaining() - 4) return null;
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER_SIZE, length);
+        if ((int) crc.getValue() != buffer.getInt(HEADER_SIZE + length)) return null;
+
+        return new Contents(key, buffer.slice(HEADER_SIZE, length));
+    }
+
+    /**
+     * Replace the file
+     */
+    public void save(byte[] key, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payload.length + 4)
+            .putInt(MAGIC).putInt(VERSION).put(key).putInt(payload.length)
+            .put(payload).putInt((int) crc.getValue())
+            .flip();
+
+        Files.createDirectories(file.getParent());
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(true);
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public record Contents(byte[] key, ByteBuffer payload) {
+    }
+
+    // Encoding helpers for the compiled structures; arrays are written length first
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeInt(value.length());
+        out.writeChars(value);
+    }
+
+    static String readString(ByteBuffer in) {
+        return new String(readChars(in));
+    }
+
+    static void writeChars(DataOutputStream out, char[] values) throws IOException {
+        out.writeInt(values.length);
+        for (char value : values) out.writeChar(value);
+    }
+
+    static char[] readChars(ByteBuffer in) {
+        char[] values = new char[in.getInt()];
+        in.asCharBuffer().get(values);
+        in.position(in.position() + values.length * Character.BYTES);
+        return values;
+    }
+
+    static void writeBytes(DataOutputStream out, byte[] values) throws IOException {
+        out.writeInt(values.length);
+        out.write(values);
+    }
+
+    static byte[] readBytes(ByteBuffer in) {
+        byte[] values = new byte[in.getInt()];
+        in.get(values);
+        return values;
+    }
+
+    static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) out.writeInt(value);
+    }
+
+    static int[] readInts(ByteBuffer in) {
+        int[] values = new int[in.getInt()];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + values.length * Integer.BYTES);
+        return values;
+    }
+
+    static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+        out.writeInt(values.length);
+        for (long value : values) out.writeLong(value);
+    }
+
+    static long[] readLongs(ByteBuffer in) {
+        long[] values = new long[in.getInt()];
+        in.asLongBuffer().get(values);
+        in.position(in.position() + values.length * Long.BYTES);
+        return values;
+    }
+}
@@ -1,163 +1,746 @@
 package org.zeroBzeroT.chatCo;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.regex.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
 import java.util.stream.Collectors;
-import java.text.Normalizer;
-import com.ibm.icu.text.SpoofChecker;
 
 public class BlacklistFilter {
+    /** Leetspeak substitutions; each group starts with the letter it stands in for */
+    static final String[] SUBSTITUTION_GROUPS = {
+        "a@4^", "b6", "c(", "e3", "g9", "h#", "i1!|", "l1|!", "o0", "q9", "s5$", "t7+", "z2"
+    };
+
+    /** Characters allowed between letters, i.e. [\\s_.-] */
+    static final String SEPARATORS = " \t\n\u000B\f\r_.-";
+
+    /**
+     * Maps ASCII characters onto one representative per group of characters the patterns treat as
+     * interchangeable (overlapping substitution groups are merged), separators onto 0
+     */
+    private static final char[] CANONICAL = buildCanonicalTable();
+
+    private static final byte KEY_FULL = 0;
+    private static final byte KEY_PREFIX = 1;
+    private static final byte KEY_SUFFIX = 2;
+
+    private static final double DEFAULT_SIMILARITY = 0.8;
+
+    private static final int VERDICT_CACHE_SIZE = 4096;
+    private static final long VERDICT_CACHE_TTL_SECONDS = 120;
+
+    // Lists with more entries are split into shards checked in parallel; 0 never splits
+    private static final int DEFAULT_PARALLEL_THRESHOLD = 50000;
+    private static final int MAX_SHARDS = 8;
+
+    // Per-message budgets; 0 means unlimited. Only the step budget is on by default: it gives the
+    // same verdict for a message every time, while a time budget also trips on GC pauses and load
+    private static final long DEFAULT_TIME_BUDGET_MICROS = 0;
+    private static final long DEFAULT_STEP_BUDGET = 1000000;
+
+    /** Results of {@link #check(String)}, ordered so the stronger one wins when shards disagree */
+    static final int CLEAN = 0;
+    static final int OVER_BUDGET = 1;
+    static final int BLOCKED = 2;
+
+    // Part of the cache key and the payload; bump when the compiled form changes
+    private static final int CACHE_FORMAT = 2;
+
     private final Main plugin;
-    private final SpoofChecker spoofChecker;
-    private List<BlacklistEntry> blacklistEntries;
+    private final Skeletonizer skeletonizer;
+    private final WriteBehindQueue writeQueue;
+    private final BlacklistCache cache;
+    private final ForkJoinPool pool;
 
-    public BlacklistFilter(Main plugin) {
+    // Swapped as a whole, so chat threads always see one consistent compiled blacklist
+    private volatile Snapshot snapshot;
+    private volatile Budget budget;
+    private int parallelThreshold;
+
+    private final LongAdder overBudget = new LongAdder();
+
+    // Per-thread buffers so checking a message allocates nothing beyond its skeleton
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    private final VerdictCache verdicts = new VerdictCache(VERDICT_CACHE_SIZE, VERDICT_CACHE_TTL_SECONDS, TimeUnit.SECONDS);
+
+    public BlacklistFilter(Main plugin, WriteBehindQueue writeQueue, File cacheFile) {
         this.plugin = plugin;
-        this.spoofChecker = new SpoofChecker.Builder().build();
-        reloadBlacklist();
+        this.skeletonizer = new Skeletonizer();
+        this.writeQueue = writeQueue;
+        this.cache = new BlacklistCache(cacheFile);
+        this.pool = createPool(Runtime.getRuntime().availableProcessors());
+        loadBlacklist();
     }
 
-    /** Reload the blacklist from config */
-    public void reloadBlacklist() {
+    /**
+     * Filter over a fixed list, without config and cache file; for benchmarks
+     */
+    BlacklistFilter(List<String> words, double similarity, int parallelThreshold, int parallelism) {
+        this.plugin = null;
+        this.skeletonizer = new Skeletonizer();
+        this.writeQueue = null;
+        this.cache = null;
+        this.pool = createPool(parallelism);
+        this.budget = new Budget(0, 0, true);
+        this.parallelThreshold = parallelThreshold;
+        update(words, similarity, Map.of());
+    }
+
+    private static ForkJoinPool createPool(int parallelism) {
+        // Worker threads are only started once a sharded list is checked
+        return new ForkJoinPool(Math.max(1, Math.min(parallelism, MAX_SHARDS)), pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("ChatCo-Blacklist-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    /** Stop the worker threads of the parallel mode */
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * Start from the cache file: as is if it was compiled from the current config, as a stopgap
+     * while the blacklist is rebuilt in the background if not, and compile right away without one
+     */
+    private void loadBlacklist() {
         List<String> words = plugin.getConfig().getStringList("ChatCo.wordBlacklist");
+        double similarity = plugin.getConfig().getDouble("ChatCo.wordBlacklistSimilarity", DEFAULT_SIMILARITY);
+        parallelThreshold = plugin.getConfig().getInt("ChatCo.wordBlacklistParallelThreshold", DEFAULT_PARALLEL_THRESHOLD);
+        loadBudget();
+
+        Snapshot cached = null;
+        boolean upToDate = false;
+
+        try {
+            BlacklistCache.Contents contents = cache.load();
+            if (contents != null) {
+                cached = readSnapshot(contents.payload());
+                upToDate = Arrays.equals(contents.key(), cacheKey(words, similarity));
+            }
+        } catch (IOException | RuntimeException e) {
+            plugin.getLogger().log(Level.WARNING, "Ignoring unreadable blacklist cache", e);
+        }
 
-        blacklistEntries = words.stream()
-            .map(this::normalizeAndSkeleton)
-            .filter(s -> !s.isEmpty())
-            .map(this::createEntry)
-            .toList();
+        if (cached == null) {
+            reloadBlacklist();
+        } else if (upToDate) {
+            // The threshold is not part of the key, only the indexes depend on it
+            int shards = shardCount(cached.entries.size());
+            snapshot = cached.shards.length == shards ? cached : new Snapshot(words, similarity, cached.entries, shards);
+        } else {
+            // The old blacklist keeps filtering until the new one is compiled
+            snapshot = new Snapshot(words, similarity, cached.entries, cached.indexes());
+            plugin.getLogger().info("Blacklist changed, recompiling it in the background");
+
+            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+                Map<String, BlacklistEntry> prepared = compile(words, similarity);
+                synchronized (this) {
+                    // Picks up words added or removed in the meantime
+                    update(snapshot.words, snapshot.similarity, prepared);
+                }
+            });
+        }
     }
 
-    /** Check if a message contains blacklisted words */
-    public boolean containsBlacklistedWord(String message) {
-        if (message == null || message.isBlank()) return false;
+    /** Reload the blacklist from config, reusing the compiled entries of unchanged words */
+    public synchronized void reloadBlacklist() {
+        List<String> words = plugin.getConfig().getStringList("ChatCo.wordBlacklist");
+        double similarity = plugin.getConfig().getDouble("ChatCo.wordBlacklistSimilarity", DEFAULT_SIMILARITY);
+        parallelThreshold = plugin.getConfig().getInt("ChatCo.wordBlacklistParallelThreshold", DEFAULT_PARALLEL_THRESHOLD);
+        loadBudget();
 
-        String skeleton = normalizeAndSkeleton(message);
+        update(words, similarity, Map.of());
+    }
 
-        for (BlacklistEntry entry : blacklistEntries) {
-            // Fast contains check
-            if (skeleton.contains(entry.skeleton)) return true;
+    private void loadBudget() {
+        long micros = plugin.getConfig().getLong("ChatCo.wordBlacklistTimeBudgetMicros", DEFAULT_TIME_BUDGET_MICROS);
+        long steps = plugin.getConfig().getLong("ChatCo.wordBlacklistStepBudget", DEFAULT_STEP_BUDGET);
+        String policy = plugin.getConfig().getString("ChatCo.wordBlacklistOverBudget", "block");
 
-            // Fuzzy regex check
-            if (entry.fuzzyPattern.matcher(skeleton).find()) return true;
+        if (!policy.equalsIgnoreCase("block") && !policy.equalsIgnoreCase("allow")) {
+            plugin.getLogger().warning("Unknown ChatCo.wordBlacklistOverBudget \"" + policy + "\", using block");
+            policy = "block";
+        }
 
-            // Reversed check (if applicable)
-            if (entry.reversedPattern != null && entry.reversedPattern.matcher(skeleton).find()) {
-                return true;
-            }
+        budget = new Budget(TimeUnit.MICROSECONDS.toNanos(Math.max(0, micros)), Math.max(0, steps), policy.equalsIgnoreCase("block"));
+    }
+
+    /**
+     * Add a word without recompiling the others
+     *
+     * @return false if the word is already in the filter
+     */
+    public synchronized boolean addWord(String word) {
+        Snapshot current = snapshot;
+        if (current.words.contains(word)) return false;
+
+        List<String> words = new ArrayList<>(current.words);
+        words.add(word);
+
+        update(words, current.similarity, Map.of());
+        return true;
+    }
 
-            // Omission check (if applicable)
-            if (entry.omissionPattern != null && matchesWithOmission(skeleton, entry)) {
-                return true;
+    /**
+     * Remove one occurrence of a word without recompiling the others
+     *
+     * @return false if the word was not in the filter
+     */
+    public synchronized boolean removeWord(String word) {
+        Snapshot current = snapshot;
+        List<String> words = new ArrayList<>(current.words);
+        if (!words.remove(word)) return false;
+
+        update(words, current.similarity, Map.of());
+        return true;
+    }
+
+    /**
+     * Publish a snapshot of the given words and queue it for the cache file. Only words that are
+     * neither prepared nor compiled with the same similarity in the current snapshot are compiled.
+     * Callers hold the lock.
+     */
+    private void update(List<String> words, double similarity, Map<String, BlacklistEntry> prepared) {
+        Map<String, BlacklistEntry> compiled = new HashMap<>(prepared);
+        Snapshot current = snapshot;
+        if (current != null) {
+            for (BlacklistEntry entry : current.entries) {
+                if (entry.similarity == similarity) compiled.putIfAbsent(entry.word, entry);
             }
         }
 
-        return false;
+        List<BlacklistEntry> entries = new ArrayList<>(words.size());
+        for (String word : words) {
+            BlacklistEntry entry = compiled.get(word);
+            if (entry == null) entry = createEntry(word, similarity);
+            if (entry != null) entries.add(entry);
+        }
+
+        Snapshot next = new Snapshot(words, similarity, entries, shardCount(entries.size()));
+
+        // In this order a check that started under the old generation cannot cache an old verdict
+        snapshot = next;
+        verdicts.clear();
+
+        if (cache != null) {
+            writeQueue.submit(cache, () -> cache.save(cacheKey(next.words, next.similarity), writeSnapshot(next)));
+        }
+    }
+
+    /** Number of shards for a list, 1 below the threshold or without spare cores */
+    private int shardCount(int entries) {
+        return parallelThreshold > 0 && entries > parallelThreshold ? pool.getParallelism() : 1;
+    }
+
+    /** Compile words outside the lock, e.g. on a background thread */
+    private Map<String, BlacklistEntry> compile(List<String> words, double similarity) {
+        Map<String, BlacklistEntry> compiled = new HashMap<>();
+        for (String word : words) {
+            if (compiled.containsKey(word)) continue;
+            BlacklistEntry entry = createEntry(word, similarity);
+            if (entry != null) compiled.put(word, entry);
+        }
+        return compiled;
+    }
+
+    private byte[] cacheKey(List<String> words, double similarity) {
+        return BlacklistCache.key(CACHE_FORMAT + "/" + plugin.getPluginMeta().getVersion(), similarity, words);
+    }
+
+    private static byte[] writeSnapshot(Snapshot snapshot) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(bytes))) {
+            out.writeInt(CACHE_FORMAT);
+            out.writeDouble(snapshot.similarity);
+            out.writeInt(snapshot.words.size());
+            for (String word : snapshot.words) BlacklistCache.writeString(out, word);
+            out.writeInt(snapshot.entries.size());
+            for (BlacklistEntry entry : snapshot.entries) entry.write(out);
+            out.writeInt(snapshot.shards.length);
+            for (Shard shard : snapshot.shards) shard.candidateIndex.write(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the snapshot or null if it was written in another format
+     */
+    private static Snapshot readSnapshot(ByteBuffer in) {
+        if (in.getInt() != CACHE_FORMAT) return null;
+
+        double similarity = in.getDouble();
+        List<String> words = new ArrayList<>();
+        for (int i = in.getInt(); i > 0; i--) words.add(BlacklistCache.readString(in));
+        List<BlacklistEntry> entries = new ArrayList<>();
+        for (int i = in.getInt(); i > 0; i--) entries.add(new BlacklistEntry(in));
+        AhoCorasick[] indexes = new AhoCorasick[in.getInt()];
+        for (int i = 0; i < indexes.length; i++) indexes[i] = AhoCorasick.read(in);
+
+        return new Snapshot(words, similarity, entries, indexes);
+    }
+
+    /** Get the verdict cache, e.g. for its hit and miss counters */
+    public VerdictCache getVerdictCache() {
+        return verdicts;
+    }
+
+    /** Get the number of messages whose check ran out of its time or step budget */
+    public long getOverBudgetCount() {
+        return overBudget.sum();
+    }
+
+    /**
+     * Check if a message contains blacklisted words. Safe to call from any thread.
+     */
+    public boolean containsBlacklistedWord(String message) {
+        int generation = verdicts.generation();
+        return verdict(message, snapshot, budget, scratch.get(), generation);
+    }
+
+    /**
+     * Check many texts at once, e.g. the pages of a book or the lines of a sign. All of them are
+     * checked against the same blacklist, even if it is reloaded meanwhile, and share this
+     * thread's buffers. Safe to call from any thread.
+     *
+     * @return the verdict for each text, in order: true if it contains blacklisted words
+     */
+    public boolean[] filterAll(List<String> messages) {
+        // Read before the snapshot, so a verdict from a replaced blacklist is never cached
+        int generation = verdicts.generation();
+        Snapshot current = snapshot;
+        Budget budget = this.budget;
+        Scratch buffers = scratch.get();
+
+        boolean[] blocked = new boolean[messages.size()];
+        for (int i = 0; i < blocked.length; i++) {
+            blocked[i] = verdict(messages.get(i), current, budget, buffers, generation);
+        }
+        return blocked;
+    }
+
+    private boolean verdict(String message, Snapshot current, Budget budget, Scratch buffers, int generation) {
+        if (message == null || message.isBlank()) return false;
+
+        Boolean cached = verdicts.get(message);
+        if (cached != null) return cached;
+
+        int result = check(message, current, budget, buffers);
+
+        if (result == OVER_BUDGET) {
+            overBudget.increment();
+            // Depends on load and timing, so it is not cached
+            return budget.block;
+        }
+
+        boolean verdict = result == BLOCKED;
+        verdicts.put(message, verdict, generation);
+        return verdict;
     }
 
-    /** Normalize and generate spoof skeleton */
-    private String normalizeAndSkeleton(String input) {
-        String lower = input.toLowerCase();
-        String normalized = Normalizer.normalize(lower, Normalizer.Form.NFKC);
-        return spoofChecker.getSkeleton(normalized);
+    /**
+     * Normalize a message and run it against the blacklist, bypassing the verdict cache
+     *
+     * @return {@link #CLEAN}, {@link #BLOCKED} or {@link #OVER_BUDGET} if it could not be decided
+     */
+    int check(String message) {
+        return check(message, snapshot, budget, scratch.get());
     }
 
-    /** Build all patterns for one word */
-    private BlacklistEntry createEntry(String word) {
-        Pattern fuzzy = createFuzzyPattern(word);
+    private int check(String message, Snapshot current, Budget budget, Scratch buffers) {
+        long start = System.nanoTime();
+        String skeleton = skeletonizer.skeleton(message);
 
-        Pattern reversed = null;
-        if (word.length() >= 5) {
-            String reversedWord = new StringBuilder(word).reverse().toString();
-            reversed = createFuzzyPattern(reversedWord);
+        if (current.shards.length == 1) {
+            return check(current.shards[0], skeleton, null, budget.limit(start, 1), buffers);
         }
 
-        Pattern omission = null;
-        if (word.length() > 6) {
-            omission = createOmissionPattern(word);
+        // The calling thread takes the first shard itself, the pool the others
+        Limit limit = budget.limit(start, current.shards.length);
+        AtomicBoolean found = new AtomicBoolean();
+        List<ForkJoinTask<Integer>> tasks = new ArrayList<>(current.shards.length - 1);
+        for (int i = 1; i < current.shards.length; i++) {
+            Shard shard = current.shards[i];
+            tasks.add(pool.submit(() -> check(shard, skeleton, found, limit, scratch.get())));
         }
 
-        return new BlacklistEntry(word, fuzzy, reversed, omission);
+        int result = check(current.shards[0], skeleton, found, limit, buffers);
+        for (ForkJoinTask<Integer> task : tasks) {
+            if (result == BLOCKED) {
+                // Not started yet, or stopping at its next candidate because found is set
+                task.cancel(false);
+            } else {
+                result = Math.max(result, task.join());
+            }
+        }
+        return result;
     }
 
-    /** Create fuzzy regex pattern for a word */
-    private Pattern createFuzzyPattern(String word) {
-        StringBuilder regex = new StringBuilder("(?i)(?<![a-zA-Z0-9])");
-        for (int i = 0; i < word.length(); i++) {
-            regex.append("(?:").append(createAsciiSubstitutions(word.charAt(i))).append(")+");
-            if (i < word.length() - 1) regex.append("[\\s_.-]*");
+    /**
+     * Run a skeleton against one shard
+     *
+     * @param found - set on a hit and polled to stop early, or null when checking sequentially
+     */
+    private int check(Shard shard, String skeleton, AtomicBoolean found, Limit limit, Scratch buffers) {
+        buffers.ensureCapacity(skeleton.length(), shard.entries.size(), shard.stateSize);
+
+        // One pass over the canonical message selects the entries that can possibly match
+        int length = canonicalize(skeleton, buffers.text);
+        int touched = 0;
+        int state = 0;
+
+        for (int p = 0; p < length; p++) {
+            state = shard.candidateIndex.next(state, buffers.text[p]);
+            for (int key : shard.candidateIndex.outputs(state)) {
+                int entry = shard.keyEntries[key];
+                if (buffers.hits[entry] == 0) buffers.touched[touched++] = entry;
+                buffers.hits[entry] |= (byte) (1 << shard.keyKinds[key]);
+            }
+        }
+
+        // Every candidate costs one pass of its matcher over the message
+        long steps = limit.steps;
+
+        try {
+            for (int entry : shard.alwaysCandidates) {
+                if (found != null && found.get()) return CLEAN;
+                if ((steps -= skeleton.length()) < 0 || limit.expired()) return OVER_BUDGET;
+                if (matches(skeleton, shard.entries.get(entry), buffers)) return hit(found);
+            }
+
+            for (int i = 0; i < touched; i++) {
+                int entry = buffers.touched[i];
+                byte hits = buffers.hits[entry];
+
+                // A full key hit or both ends of an omission entry make it a candidate
+                if ((hits & (1 << KEY_FULL)) != 0 || (hits & 0b110) == 0b110) {
+                    if (found != null && found.get()) return CLEAN;
+                    if ((steps -= skeleton.length()) < 0 || limit.expired()) return OVER_BUDGET;
+                    if (matches(skeleton, shard.entries.get(entry), buffers)) return hit(found);
+                }
+            }
+
+            return CLEAN;
+        } finally {
+            for (int i = 0; i < touched; i++) {
+                buffers.hits[buffers.touched[i]] = 0;
+            }
         }
-        regex.append("(?![a-zA-Z0-9])");
-        return Pattern.compile(regex.toString());
     }
 
-    /** Create omission regex (allows skipped chars, still requires anchors) */
-    private Pattern createOmissionPattern(String word) {
-        StringBuilder regex = new StringBuilder("(?i)(?<![a-zA-Z0-9])");
-        for (int i = 0; i < word.length(); i++) {
-            String charClass = createAsciiSubstitutions(word.charAt(i));
-            boolean required = (i < 2 || i >= word.length() - 2); // force first/last chars
-            regex.append("(?:").append(charClass).append(required ? "+" : "*").append(")");
-            if (i < word.length() - 1) regex.append("[\\s_.-]*");
+    private static int hit(AtomicBoolean found) {
+        if (found != null) found.set(true);
+        return BLOCKED;
+    }
+
+    /** Run the checks of one entry */
+    private boolean matches(String skeleton, BlacklistEntry entry, Scratch buffers) {
+        // Fast contains check
+        if (skeleton.contains(entry.skeleton)) return true;
+
+        // Fuzzy, reversed and omission checks in one pass
+        return entry.matcher.find(skeleton, buffers.state);
+    }
+
+    /**
+     * Build the matcher for one word
+     *
+     * @return the entry or null if the skeleton of the word is empty
+     */
+    private BlacklistEntry createEntry(String word, double similarity) {
+        String skeleton = skeletonizer.skeleton(word);
+        if (skeleton.isEmpty()) return null;
+
+        boolean reversed = skeleton.length() >= 5;
+        int omissions = skeleton.length() > 6 ? maxOmissions(skeleton.length(), similarity) : 0;
+
+        return new BlacklistEntry(word, skeleton, similarity, new FuzzyMatcher(skeleton, omissions, reversed), reversed, omissions);
+    }
+
+    /** Most letters of a word that may be left out while keeping the given share of it */
+    static int maxOmissions(int length, double similarity) {
+        int omissions = 0;
+        // The first and last two letters are always kept
+        while (omissions < length - 4 && length - (omissions + 1) >= length * similarity) {
+            omissions++;
         }
-        regex.append("(?![a-zA-Z0-9])");
-        return Pattern.compile(regex.toString());
+        return omissions;
     }
 
-    /** ASCII substitutions */
-    private String createAsciiSubstitutions(char c) {
-        return switch (Character.toLowerCase(c)) {
-            case 'a' -> "[a@4^]";
-            case 'b' -> "[b6]";
-            case 'c' -> "[c(]";
-            case 'e' -> "[e3]";
-            case 'g' -> "[g9]";
-            case 'h' -> "[h#]";
-            case 'i' -> "[i1!|]";
-            case 'l' -> "[l1|!]";
-            case 'o' -> "[o0]";
-            case 'q' -> "[q9]";
-            case 's' -> "[s5$]";
-            case 't' -> "[t7+]";
-            case 'z' -> "[z2]";
-            default -> Pattern.quote(String.valueOf(c));
-        };
+    /**
+     * Canonical form used by the candidate pre-filter: ASCII lowercased, interchangeable characters
+     * mapped to one representative, separators dropped and runs of the same character collapsed.
+     * This mirrors what the fuzzy, reversed and omission matching tolerates, but more loosely.
+     */
+    static String canonicalize(String text) {
+        char[] out = new char[text.length()];
+        return new String(out, 0, canonicalize(text, out));
     }
 
-    /** Check if omission regex yields >=80% match */
-    private boolean matchesWithOmission(String text, BlacklistEntry entry) {
-        Matcher m = entry.omissionPattern.matcher(text);
-        while (m.find()) {
-            int matchedChars = countAlphanumeric(m.group());
-            if (matchedChars >= (entry.skeleton.length() * 0.8)) return true;
+    /**
+     * Canonicalize into a buffer at least as long as the text
+     *
+     * @return the length of the canonical form
+     */
+    static int canonicalize(String text, char[] out) {
+        int length = 0;
+        char last = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 128) c = CANONICAL[c];
+            if (c == 0 || c == last) continue;
+            out[length++] = c;
+            last = c;
         }
-        return false;
+        return length;
     }
 
-    /** Count alphanumeric characters in a string */
-    private int countAlphanumeric(String str) {
-        return (int) str.chars().filter(Character::isLetterOrDigit).count();
+    private static char[] buildCanonicalTable() {
+        char[] table = new char[128];
+        for (char c = 0; c < 128; c++) {
+            table[c] = c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+        }
+
+        // Union the groups; i/l share 1!| and g/q share 9, so they end up as one class each
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (String group : SUBSTITUTION_GROUPS) {
+                char rep = 127;
+                for (int i = 0; i < group.length(); i++) rep = (char) Math.min(rep, table[group.charAt(i)]);
+                for (int i = 0; i < group.length(); i++) {
+                    char member = group.charAt(i);
+                    for (char c = 0; c < 128; c++) {
+                        if (table[c] == table[member] && table[c] != rep) {
+                            table[c] = rep;
+                            changed = true;
+                        }
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < SEPARATORS.length(); i++) {
+            table[SEPARATORS.charAt(i)] = 0;
+        }
+        return table;
     }
 
-    /** Debug: get fuzzy patterns */
-    public List<Pattern> getBlacklistPatterns() {
-        return blacklistEntries.stream()
-            .map(e -> e.fuzzyPattern)
+    /** Debug: get the normalized blacklist words */
+    public List<String> getBlacklistSkeletons() {
+        return snapshot.entries.stream()
+            .map(e -> e.skeleton)
             .collect(Collectors.toList());
     }
 
-    /** Holder for blacklist word + its regex variations */
+    /** Holder for blacklist word + its matcher and pre-filter keys */
     private static class BlacklistEntry {
+        final String word;
         final String skeleton;
-        final Pattern fuzzyPattern;
-        final Pattern reversedPattern;
-        final Pattern omissionPattern;
+        final double similarity;
+        final FuzzyMatcher matcher;
+        // No keys: the entry cannot be pre-filtered and is checked for every message
+        final String[] keys;
+        final byte[] keyKinds;
 
-        BlacklistEntry(String skeleton, Pattern fuzzy, Pattern reversed, Pattern omission) {
+        /**
+         * Derive the keys: the canonical form of the skeleton, its reversal and, for omission
+         * entries, its first and last two letters. Any string a pattern of the entry matches
+         * contains the corresponding canonical key once canonicalized, so the entry can be skipped
+         * safely without a key hit.
+         */
+        BlacklistEntry(String word, String skeleton, double similarity, FuzzyMatcher matcher, boolean reversed, int omissions) {
+            this.word = word;
             this.skeleton = skeleton;
-            this.fuzzyPattern = fuzzy;
-            this.reversedPattern = reversed;
-            this.omissionPattern = omission;
+            this.similarity = similarity;
+            this.matcher = matcher;
+
+            List<String> keys = new ArrayList<>();
+            List<Byte> kinds = new ArrayList<>();
+            String full = canonicalize(skeleton);
+
+            if (!full.isEmpty()) {
+                keys.add(full);
+                kinds.add(KEY_FULL);
+                if (reversed) {
+                    keys.add(new StringBuilder(full).reverse().toString());
+                    kinds.add(KEY_FULL);
+                }
+
+                if (omissions > 0) {
+                    String prefix = canonicalize(skeleton.substring(0, 2));
+                    String suffix = canonicalize(skeleton.substring(skeleton.length() - 2));
+                    if (prefix.isEmpty() || suffix.isEmpty()) {
+                        keys.clear();
+                        kinds.clear();
+                    } else {
+                        keys.add(prefix);
+                        kinds.add(KEY_PREFIX);
+                        keys.add(suffix);
+                        kinds.add(KEY_SUFFIX);
+                    }
+                }
+            }
+
+            this.keys = keys.toArray(new String[0]);
+            this.keyKinds = new byte[kinds.size()];
+            for (int i = 0; i < this.keyKinds.length; i++) this.keyKinds[i] = kinds.get(i);
+        }
+
+        BlacklistEntry(ByteBuffer in) {
+            this.word = BlacklistCache.readString(in);
+            this.skeleton = BlacklistCache.readString(in);
+            this.similarity = in.getDouble();
+            this.matcher = FuzzyMatcher.read(in);
+            this.keys = new String[in.getInt()];
+            for (int i = 0; i < keys.length; i++) keys[i] = BlacklistCache.readString(in);
+            this.keyKinds = BlacklistCache.readBytes(in);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            BlacklistCache.writeString(out, word);
+            BlacklistCache.writeString(out, skeleton);
+            out.writeDouble(similarity);
+            matcher.write(out);
+            out.writeInt(keys.length);
+            for (String key : keys) BlacklistCache.writeString(out, key);
+            BlacklistCache.writeBytes(out, keyKinds);
+        }
+    }
+
+    /**
+     * Immutable compiled blacklist: the configured words, the entries and the candidate pre-filter
+     * over them. Only the indexes are rebuilt for a new snapshot; the entries are shared with the
+     * previous one. Long lists are split round-robin into shards with an index each.
+     */
+    private static class Snapshot {
+        final List<String> words;
+        final double similarity;
+        final List<BlacklistEntry> entries;
+        final Shard[] shards;
+
+        Snapshot(List<String> words, double similarity, List<BlacklistEntry> entries, int shards) {
+            this(words, similarity, entries, new AhoCorasick[shards]);
+        }
+
+        /**
+         * @param indexes - per shard, an index built from the keys of the same entries, or null to
+         *                build it
+         */
+        Snapshot(List<String> words, double similarity, List<BlacklistEntry> entries, AhoCorasick[] indexes) {
+            this.words = List.copyOf(words);
+            this.similarity = similarity;
+            this.entries = List.copyOf(entries);
+            this.shards = new Shard[indexes.length];
+
+            for (int s = 0; s < shards.length; s++) {
+                List<BlacklistEntry> part = new ArrayList<>(this.entries.size() / shards.length + 1);
+                for (int i = s; i < this.entries.size(); i += shards.length) part.add(this.entries.get(i));
+                shards[s] = new Shard(part, indexes[s]);
+            }
+        }
+
+        AhoCorasick[] indexes() {
+            AhoCorasick[] indexes = new AhoCorasick[shards.length];
+            for (int s = 0; s < shards.length; s++) indexes[s] = shards[s].candidateIndex;
+            return indexes;
+        }
+    }
+
+    /** Part of the entries with the candidate pre-filter over their keys */
+    private static class Shard {
+        final List<BlacklistEntry> entries;
+
+        // Candidate pre-filter: keys are canonical forms of the entries, see canonicalize
+        final AhoCorasick candidateIndex;
+        final int[] keyEntries;
+        final byte[] keyKinds;
+        final int[] alwaysCandidates;
+        final int stateSize;
+
+        /**
+         * @param index - an index built from the keys of the same entries, or null to build it
+         */
+        Shard(List<BlacklistEntry> entries, AhoCorasick index) {
+            this.entries = entries;
+
+            List<String> keys = new ArrayList<>();
+            List<Integer> keyEntries = new ArrayList<>();
+            List<Byte> kinds = new ArrayList<>();
+            List<Integer> always = new ArrayList<>();
+
+            int maxState = 0;
+
+            for (int i = 0; i < entries.size(); i++) {
+                BlacklistEntry entry = entries.get(i);
+                maxState = Math.max(maxState, entry.matcher.stateSize());
+
+                if (entry.keys.length == 0) always.add(i);
+                for (int k = 0; k < entry.keys.length; k++) {
+                    if (index == null) keys.add(entry.keys[k]);
+                    keyEntries.add(i);
+                    kinds.add(entry.keyKinds[k]);
+                }
+            }
+
+            this.candidateIndex = index != null ? index : new AhoCorasick(keys);
+            this.keyEntries = keyEntries.stream().mapToInt(Integer::intValue).toArray();
+            this.keyKinds = new byte[kinds.size()];
+            for (int i = 0; i < this.keyKinds.length; i++) this.keyKinds[i] = kinds.get(i);
+            this.alwaysCandidates = always.stream().mapToInt(Integer::intValue).toArray();
+            this.stateSize = maxState;
+        }
+    }
+
+    /**
+     * Configured limits on the work for one message
+     *
+     * @param nanos - time budget, 0 for none
+     * @param steps - characters all matchers together may read, 0 for none
+     * @param block - verdict for messages that run out of budget
+     */
+    private record Budget(long nanos, long steps, boolean block) {
+        Limit limit(long start, int shards) {
+            // Shards run side by side, so each gets its part of the steps but all of the time
+            return new Limit(start, nanos > 0 ? nanos : Long.MAX_VALUE, steps > 0 ? steps / shards : Long.MAX_VALUE);
+        }
+    }
+
+    /** Budget of one check, started at start */
+    private record Limit(long start, long nanos, long steps) {
+        boolean expired() {
+            return System.nanoTime() - start > nanos;
+        }
+    }
+
+    /** Reusable per-thread buffers for one check */
+    private static class Scratch {
+        char[] text = new char[256];
+        byte[] hits = new byte[0];
+        int[] touched = new int[0];
+        long[] state = new long[0];
+
+        void ensureCapacity(int textLength, int entries, int stateLength) {
+            if (text.length < textLength) text = new char[Math.max(textLength, text.length * 2)];
+            if (hits.length < entries) {
+                hits = new byte[entries];
+                touched = new int[entries];
+            }
+            if (state.length < stateLength) state = new long[stateLength];
         }
     }
 }
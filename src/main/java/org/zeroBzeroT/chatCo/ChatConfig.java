@@ -0,0 +1,67 @@
+package org.zeroBzeroT.chatCo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.bukkit.configuration.file.FileConfiguration;
+
+/**
+ * Immutable snapshot of the settings read while handling chat and whispers. Looking a value up in
+ * the {@link FileConfiguration} splits its path and walks nested maps, and that configuration is
+ * not safe to read from async chat threads; the snapshot is compiled once and swapped as a whole
+ * whenever the config is reloaded or changed, see {@link Main#getChatConfig()}.
+ *
+ * @param colors               - the configured chat prefixes and inline color markers, compiled for rewriting messages
+ * @param whisperFormatSend    - format shown to the sender, color placeholders already resolved
+ * @param whisperFormatReceive - format shown to the receiver, color placeholders already resolved
+ */
+public record ChatConfig(
+    boolean chatDisabled,
+    boolean ignoresEnabled,
+    boolean chatToConsole,
+    boolean blockUnicodeText,
+    boolean debugUnicodeBlocking,
+    boolean debugBlacklistBlocking,
+    ColorRewriter colors,
+    String whisperFormatSend,
+    String whisperFormatReceive,
+    boolean ignoreMessageEnabled,
+    boolean chatDisabledMessageEnabled,
+    boolean whisperLog,
+    boolean whisperMonitoring,
+    boolean lastCommand,
+    boolean replyCommands
+) {
+    /**
+     * Compile the settings from the plugin config
+     */
+    public static ChatConfig load(FileConfiguration config) {
+        Map<String, String> chatPrefixes = new LinkedHashMap<>();
+        Map<String, String> chatColors = new LinkedHashMap<>();
+        for (String colorName : Utils.getNamedColors().keySet()) {
+            String prefix = config.getString("ChatCo.chatPrefixes." + colorName);
+            if (prefix != null) chatPrefixes.put(colorName, prefix);
+
+            String colorCode = config.getString("ChatCo.chatColors." + colorName);
+            if (colorCode != null) chatColors.put(colorName, colorCode);
+        }
+
+        return new ChatConfig(
+            config.getBoolean("ChatCo.chatDisabled", false),
+            config.getBoolean("ChatCo.ignoresEnabled", true),
+            config.getBoolean("ChatCo.chatToConsole", true),
+            config.getBoolean("ChatCo.blockUnicodeText", false),
+            config.getBoolean("ChatCo.debugUnicodeBlocking", false),
+            config.getBoolean("ChatCo.debugBlacklistBlocking", false),
+            new ColorRewriter(chatPrefixes, chatColors),
+            Whispers.resolveColorPlaceholders(config.getString("ChatCo.whisperFormat.send", "&7To &f%RECEIVER%&7: ")),
+            Whispers.resolveColorPlaceholders(config.getString("ChatCo.whisperFormat.receive", "&7From &f%SENDER%&7: ")),
+            config.getBoolean("ChatCo.ignoreMessageEnabled", true),
+            config.getBoolean("ChatCo.chatDisabledMessageEnabled", true),
+            config.getBoolean("ChatCo.whisperLog", false),
+            config.getBoolean("ChatCo.whisperMonitoring", false),
+            config.getBoolean("ChatCo.lastCommand", true),
+            config.getBoolean("ChatCo.replyCommands", true)
+        );
+    }
+}
@@ -1,92 +1,109 @@
 package org.zeroBzeroT.chatCo;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.UUID;
 
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 
 public class ChatPlayer {
-    public final Player player;
     public final UUID playerUUID;
+    public final String playerName;
     public boolean chatDisabled;
     public boolean tellsDisabled;
     public String LastMessenger;
     public String LastReceiver;
-    private File IgnoreList;
-    private List<String> ignores;
-
-    public ChatPlayer(final Player p) throws IOException {
-        player = p;
+    private final IgnoreStore ignoreStore;
+    private final IgnoreIndex ignoreIndex;
+    private volatile UUIDSet ignores;
+    private volatile boolean loaded;
+    private boolean unloaded;
+
+    /**
+     * Creates the chat state without touching the store. Until {@link #load()} has run the player
+     * ignores nobody, so chat threads can use the instance right away without blocking.
+     */
+    public ChatPlayer(final Player p, final IgnoreStore ignoreStore, final IgnoreIndex ignoreIndex) {
+        this.ignoreStore = ignoreStore;
+        this.ignoreIndex = ignoreIndex;
         playerUUID = p.getUniqueId();
+        playerName = p.getName();
         chatDisabled = false;
         tellsDisabled = false;
         LastMessenger = null;
         LastReceiver = null;
-        ignores = new ArrayList<>();
-
-        // Initialize ignore list file
-        initializeIgnoreList();
+        ignores = new UUIDSet();
+        loaded = false;
     }
 
-    // Private initialization method to avoid overridable method call in constructor
-    private void initializeIgnoreList() throws IOException {
-        File oldIgnores = new File(Main.dataFolder, "/ignorelists/" + this.player.getName() + ".txt");
-        this.IgnoreList = new File(Main.dataFolder, "/ignorelists/" + this.playerUUID + ".txt");
+    /**
+     * Loads the persisted ignore list. Safe to call repeatedly and from any thread; never blocks.
+     * While the store is still importing old ignore list files the player stays not loaded.
+     *
+     * @return true if the ignore list is loaded
+     */
+    public synchronized boolean load() {
+        if (loaded || unloaded) return loaded;
+        if (!ignoreStore.isReady()) return false;
+
+        ignores = ignoreStore.getIgnores(playerUUID);
+        ignoreIndex.addAll(playerUUID, ignores);
+        loaded = true;
+        return true;
+    }
 
-        if (oldIgnores.exists()) {
-            oldIgnores.renameTo(this.IgnoreList);
+    /**
+     * Withdraws this player's ignores from the reverse index once they leave. A background load
+     * that has not started yet becomes a no-op.
+     */
+    public synchronized void unload() {
+        if (loaded) {
+            ignoreIndex.removeAll(playerUUID, ignores);
         }
+        unloaded = true;
+    }
 
-        if (!this.IgnoreList.exists()) {
-            this.IgnoreList.getParentFile().mkdir();
-            this.IgnoreList.createNewFile();
-        }
+    /**
+     * Takes over entries the background import of old ignore lists added to the store after this
+     * player's list was loaded
+     */
+    public synchronized void reloadIgnores() {
+        if (!loaded || unloaded) return;
+
+        ignores = ignoreStore.getIgnores(playerUUID);
+        ignoreIndex.addAll(playerUUID, ignores);
+    }
 
-        // Initialize the ignores list
-        updateIgnoreList();
+    public boolean isLoaded() {
+        return loaded;
     }
 
-    @SuppressWarnings("ResultOfMethodCallIgnored")
-    public void saveIgnoreList(final String p) throws IOException {
-        if (!p.isEmpty()) {
-            if (!this.isIgnored(p)) {
-                try (FileWriter fwo = new FileWriter(this.IgnoreList, true);
-                    BufferedWriter bwo = new BufferedWriter(fwo)) {
-                    bwo.write(p);
-                    bwo.newLine();
-                }
-            } else {
-                this.ignores.remove(p);
-                this.ignores.remove("");
-                try (FileWriter fwo = new FileWriter(this.IgnoreList);
-                    BufferedWriter bwo = new BufferedWriter(fwo)) {
-                    for (final String print : this.ignores) {
-                        bwo.write(print);
-                        bwo.newLine();
-                    }
-                }
-            }
+    /**
+     * Toggle whether a player is ignored and persist the change
+     *
+     * @param target - the UUID of the player to ignore or un-ignore
+     * @return true if the player is ignored now
+     */
+    public synchronized boolean saveIgnoreList(final UUID target) {
+        if (!load()) throw new IllegalStateException("Ignore list of " + playerName + " is not loaded");
+
+        final boolean nowIgnored = !this.ignores.contains(target);
+        this.ignores = nowIgnored ? ignoreStore.add(playerUUID, target) : ignoreStore.remove(playerUUID, target);
+
+        if (nowIgnored) {
+            ignoreIndex.add(playerUUID, target);
+        } else {
+            ignoreIndex.remove(playerUUID, target);
         }
 
-        this.updateIgnoreList();
+        return nowIgnored;
     }
 
-    public void unIgnoreAll() throws IOException {
-        try (FileWriter fwo = new FileWriter(this.IgnoreList, false);
-            BufferedWriter bwo = new BufferedWriter(fwo)) {
-            bwo.flush();
-        }
+    public synchronized void unIgnoreAll() {
+        if (!load()) throw new IllegalStateException("Ignore list of " + playerName + " is not loaded");
 
-        this.updateIgnoreList();
+        final UUIDSet previous = this.ignores;
+        this.ignores = ignoreStore.clear(playerUUID);
+        ignoreIndex.removeAll(playerUUID, previous);
     }
 
     public Player getLastMessenger() {
@@ -113,26 +130,14 @@ public class ChatPlayer {
         this.LastReceiver = sender.getName();
     }
 
-    private void updateIgnoreList() throws IOException {
-        try (FileInputStream file = new FileInputStream(this.IgnoreList);
-            InputStreamReader fileReader = new InputStreamReader(file);
-            BufferedReader inIgnores = new BufferedReader(fileReader)) {
-
-            String data = inIgnores.readLine();
-            this.ignores = new ArrayList<>();
-
-            while (data != null) {
-                this.ignores.add(data);
-                data = inIgnores.readLine();
-            }
-        }
-    }
-
-    public boolean isIgnored(final String p) {
+    public boolean isIgnored(final UUID p) {
         return this.ignores.contains(p);
     }
 
-    public List<String> getIgnoreList() {
+    /**
+     * @return the current ignore set; treat it as read-only
+     */
+    public UUIDSet getIgnoreList() {
         return this.ignores;
     }
 }
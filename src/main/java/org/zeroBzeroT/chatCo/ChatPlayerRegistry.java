@@ -0,0 +1,72 @@
+package org.zeroBzeroT.chatCo;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.bukkit.entity.Player;
+
+/**
+ * The chat state of the players that are online, by UUID. Looking up a known player is a plain
+ * map read, so chat threads never wait on each other or on players joining and leaving.
+ */
+public class ChatPlayerRegistry {
+    private final Map<UUID, ChatPlayer> players = new ConcurrentHashMap<>();
+    private final IgnoreStore ignoreStore;
+    private final IgnoreIndex ignoreIndex;
+    private final Consumer<ChatPlayer> loader;
+
+    /**
+     * @param loader - starts loading the ignore list of a player seen for the first time; must not block
+     */
+    public ChatPlayerRegistry(IgnoreStore ignoreStore, IgnoreIndex ignoreIndex, Consumer<ChatPlayer> loader) {
+        this.ignoreStore = ignoreStore;
+        this.ignoreIndex = ignoreIndex;
+        this.loader = loader;
+    }
+
+    /**
+     * Get the chat state of a player, creating an empty, not yet loaded one for a player seen for
+     * the first time
+     */
+    public ChatPlayer getOrCreate(Player p) {
+        // Plain get first so the common case never touches a bin lock
+        ChatPlayer chatPlayer = players.get(p.getUniqueId());
+        if (chatPlayer != null) {
+            return chatPlayer;
+        }
+
+        ChatPlayer created = new ChatPlayer(p, ignoreStore, ignoreIndex);
+        ChatPlayer existing = players.putIfAbsent(p.getUniqueId(), created);
+        if (existing != null) {
+            return existing;
+        }
+
+        loader.accept(created);
+        return created;
+    }
+
+    /**
+     * Get the chat state of a player without creating one
+     *
+     * @return the state or null if the player is not known
+     */
+    public ChatPlayer get(UUID uuid) {
+        return players.get(uuid);
+    }
+
+    /**
+     * Forget a player that left and withdraw their ignores from the reverse index
+     */
+    public void remove(Player p) {
+        ChatPlayer chatPlayer = players.remove(p.getUniqueId());
+        if (chatPlayer != null) {
+            chatPlayer.unload();
+        }
+    }
+
+    public void clear() {
+        players.clear();
+    }
+}
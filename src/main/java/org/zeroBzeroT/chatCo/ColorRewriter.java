@@ -0,0 +1,224 @@
+package org.zeroBzeroT.chatCo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.entity.Player;
+
+/**
+ * The configured chat prefixes and inline color markers, compiled into tries so a message is
+ * rewritten in one scan instead of one {@code String.replace} pass per color.
+ * <p>
+ * Which colors a player may use is passed in as a bitmask from {@link #permissions}: bit i allows
+ * the inline marker of color i, bit 32 + i its prefix. Where several markers match at the same
+ * position the longest allowed one wins, and for equal markers the color configured first.
+ */
+public class ColorRewriter {
+    private static final int PREFIX_SHIFT = 32;
+
+    private final String[] names;
+    private final String[] codes;
+    private final Trie prefixes = new Trie();
+    private final Trie markers = new Trie();
+
+    /**
+     * @param prefixes - color name to the prefix that colors a whole message, in the order they are tried
+     * @param markers  - color name to the inline marker replaced by that color
+     */
+    public ColorRewriter(Map<String, String> prefixes, Map<String, String> markers) {
+        List<String> colors = new ArrayList<>(prefixes.keySet());
+        for (String name : markers.keySet()) {
+            if (!colors.contains(name)) colors.add(name);
+        }
+        if (colors.size() > PREFIX_SHIFT) throw new IllegalArgumentException("Too many colors: " + colors.size());
+
+        names = colors.toArray(new String[0]);
+        codes = new String[names.length];
+        for (int color = 0; color < names.length; color++) {
+            codes[color] = Utils.getDirectColorCode(names[color]);
+
+            String prefix = prefixes.get(names[color]);
+            if (prefix != null && !prefix.isEmpty()) this.prefixes.add(prefix, color);
+
+            String marker = markers.get(names[color]);
+            if (marker != null && !marker.isEmpty()) this.markers.add(marker, color);
+        }
+    }
+
+    /**
+     * Look up the colors a player may use
+     *
+     * @param permissionConfig - grants colors to everyone, in addition to the player's permissions
+     */
+    public long permissions(Player player, FileConfiguration permissionConfig) {
+        long allowed = 0;
+        for (int color = 0; color < names.length; color++) {
+            if (prefixes.contains(color) && (permissionConfig.getBoolean("ChatCo.chatPrefixes." + names[color], false)
+                    || player.hasPermission("ChatCo.chatPrefixes." + names[color]))) {
+                allowed |= 1L << (PREFIX_SHIFT + color);
+            }
+            if (markers.contains(color) && (permissionConfig.getBoolean("ChatCo.chatColors." + names[color], false)
+                    || player.hasPermission("ChatCo.chatColors." + names[color]))) {
+                allowed |= 1L << color;
+            }
+        }
+        return allowed;
+    }
+
+    /**
+     * Color a message by its prefix and replace its inline markers
+     *
+     * @param allowed - see {@link #permissions}
+     * @return the message itself if nothing was replaced
+     */
+    public String rewrite(String message, long allowed) {
+        return rewriteMarkers(message, prefixCode(message, allowed), allowed);
+    }
+
+    /**
+     * Get the color code for the prefix of a message. Only the prefix configured first among the
+     * ones the message starts with counts, even if the player may not use it.
+     *
+     * @return the code or null if the message has no allowed prefix
+     */
+    public String prefixCode(String message, long allowed) {
+        int first = Integer.MAX_VALUE;
+        int state = 0;
+        for (int i = 0; i < message.length(); i++) {
+            state = prefixes.child(state, message.charAt(i));
+            if (state < 0) break;
+            for (int color : prefixes.colors[state]) first = Math.min(first, color);
+        }
+
+        return first != Integer.MAX_VALUE && (allowed & (1L << (PREFIX_SHIFT + first))) != 0 ? codes[first] : null;
+    }
+
+    /**
+     * Replace the inline markers the player may use
+     *
+     * @param prefix - prepended to the result if not null
+     */
+    public String rewriteMarkers(String message, String prefix, long allowed) {
+        StringBuilder out = null;
+        int copied = 0;
+
+        int i = markers.next(message, 0);
+        while (i >= 0) {
+            long match = markers.match(message, i, allowed);
+            if (match < 0) {
+                i = markers.next(message, i + 1);
+                continue;
+            }
+
+            int end = (int) (match >>> 32);
+            if (out == null) out = new StringBuilder(message.length() + 16).append(prefix != null ? prefix : "");
+            out.append(message, copied, i).append(codes[(int) match]);
+            copied = end;
+            i = markers.next(message, end);
+        }
+
+        if (out == null) return prefix != null ? prefix + message : message;
+        return out.append(message, copied, message.length()).toString();
+    }
+
+    /** Character trie; every node lists the colors whose token ends there, in config order */
+    private static class Trie {
+        private char[][] chars = {new char[0]};
+        private int[][] targets = {new int[0]};
+        private int[][] colors = {new int[0]};
+        private long present;
+        // Edges of the root for ASCII, so the scan rejects most characters with one array load
+        private final int[] root = new int[128];
+
+        Trie() {
+            Arrays.fill(root, -1);
+        }
+
+        void add(String token, int color) {
+            int state = 0;
+            for (int i = 0; i < token.length(); i++) {
+                int next = child(state, token.charAt(i));
+                if (next < 0) next = addChild(state, token.charAt(i));
+                state = next;
+            }
+            colors[state] = Arrays.copyOf(colors[state], colors[state].length + 1);
+            colors[state][colors[state].length - 1] = color;
+            present |= 1L << color;
+        }
+
+        /**
+         * Find the next index a token could start at
+         *
+         * @return the index or -1 if there is none
+         */
+        int next(String text, int from) {
+            if (chars[0].length == 0) return -1;
+            // The usual config: every token starts with the same character, which indexOf finds fastest
+            if (chars[0].length == 1) return text.indexOf(chars[0][0], from);
+
+            for (int i = from; i < text.length(); i++) {
+                if (child(0, text.charAt(i)) >= 0) return i;
+            }
+            return -1;
+        }
+
+        /**
+         * Find the longest allowed token starting at an index
+         *
+         * @return its end index in the upper and its color in the lower half, or -1 if none
+         */
+        long match(String text, int start, long allowed) {
+            long match = -1;
+            int state = 0;
+            for (int i = start; i < text.length(); i++) {
+                state = child(state, text.charAt(i));
+                if (state < 0) break;
+                for (int color : colors[state]) {
+                    if ((allowed & (1L << color)) != 0) {
+                        match = (long) (i + 1) << 32 | color;
+                        break;
+                    }
+                }
+            }
+            return match;
+        }
+
+        boolean contains(int color) {
+            return (present & (1L << color)) != 0;
+        }
+
+        int child(int state, char c) {
+            if (state == 0 && c < root.length) return root[c];
+            int index = Arrays.binarySearch(chars[state], c);
+            return index >= 0 ? targets[state][index] : -1;
+        }
+
+        private int addChild(int state, char c) {
+            int node = chars.length;
+            chars = Arrays.copyOf(chars, node + 1);
+            targets = Arrays.copyOf(targets, node + 1);
+            colors = Arrays.copyOf(colors, node + 1);
+            chars[node] = new char[0];
+            targets[node] = new int[0];
+            colors[node] = new int[0];
+
+            // Keep the edges sorted for the binary search
+            int at = -Arrays.binarySearch(chars[state], c) - 1;
+            char[] edgeChars = new char[chars[state].length + 1];
+            int[] edgeTargets = new int[edgeChars.length];
+            System.arraycopy(chars[state], 0, edgeChars, 0, at);
+            System.arraycopy(targets[state], 0, edgeTargets, 0, at);
+            edgeChars[at] = c;
+            edgeTargets[at] = node;
+            System.arraycopy(chars[state], at, edgeChars, at + 1, chars[state].length - at);
+            System.arraycopy(targets[state], at, edgeTargets, at + 1, targets[state].length - at);
+            chars[state] = edgeChars;
+            targets[state] = edgeTargets;
+            if (state == 0 && c < root.length) root[c] = node;
+            return node;
+        }
+    }
+}
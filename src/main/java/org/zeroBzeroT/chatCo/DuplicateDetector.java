@@ -0,0 +1,98 @@
+package org.zeroBzeroT.chatCo;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Count-based duplicate message detection. Every player has a fixed ring of the last messages they
+ * sent, stored as 64-bit hashes of the normalized text, so a check is a few long comparisons and
+ * allocates nothing once the ring exists.
+ * <p>
+ * Chat events arrive on async threads; each ring is guarded by its own lock, so players never
+ * contend with each other.
+ */
+public class DuplicateDetector {
+    private final Map<UUID, History> histories = new ConcurrentHashMap<>();
+    private final int historySize;
+    private final int threshold;
+    private final long windowNanos;
+
+    /**
+     * @param historySize - number of past messages compared against
+     * @param threshold   - a message seen this many times in the history is a duplicate
+     * @param window      - how long a message counts, 0 for as long as it is in the history
+     */
+    public DuplicateDetector(int historySize, int threshold, long window, TimeUnit unit) {
+        this.historySize = Math.max(0, historySize);
+        this.threshold = threshold;
+        this.windowNanos = unit.toNanos(window);
+    }
+
+    /**
+     * Check a message against the player's recent ones and remember it if it is not a duplicate
+     *
+     * @return true if the message repeats too often
+     */
+    public boolean isDuplicate(UUID player, NormalizedMessage message) {
+        long hash = hash(message.folded(), message.foldedLength());
+        long now = System.nanoTime();
+        History history = histories.computeIfAbsent(player, k -> new History(historySize));
+
+        synchronized (history) {
+            int count = 0;
+            for (int i = 0; i < history.size; i++) {
+                if (history.hashes[i] == hash && (windowNanos <= 0 || now - history.times[i] < windowNanos)) {
+                    count++;
+                }
+            }
+
+            if (count >= threshold) return true;
+
+            if (historySize > 0) {
+                history.hashes[history.next] = hash;
+                history.times[history.next] = now;
+                history.next = (history.next + 1) % historySize;
+                history.size = Math.min(history.size + 1, historySize);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Forget a player's history, e.g. when they leave
+     */
+    public void remove(UUID player) {
+        histories.remove(player);
+    }
+
+    /**
+     * Hash the folded text of a message, see {@link NormalizedMessage}
+     */
+    static long hash(char[] text, int length) {
+        // FNV-1a over the normalized characters
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ text[i]) * 0x100000001b3L;
+        }
+
+        // Finalize so similar texts do not end up with similar hashes
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static class History {
+        final long[] hashes;
+        final long[] times;
+        int next;
+        int size;
+
+        History(int capacity) {
+            hashes = new long[capacity];
+            times = new long[capacity];
+        }
+    }
+}
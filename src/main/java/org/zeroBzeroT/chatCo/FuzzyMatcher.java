@@ -0,0 +1,313 @@
+package org.zeroBzeroT.chatCo;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Matches one blacklisted word the way the old fuzzy regexes did: every letter may be repeated and
+ * replaced by one of its substitutions, separators may appear between letters, and the match must
+ * not touch an ASCII letter or digit on either side. ASCII compares case-insensitively.
+ * <p>
+ * Optionally up to a number of letters between the first and last two may be left out, and the
+ * word may also be written backwards (without omissions). Both run in the same pass.
+ * <p>
+ * Each variant is simulated as a bit-parallel NFA (shift-and): two bits per letter track "just read
+ * this letter" and "in the separator gap after it", with one copy of these per number of omitted
+ * letters as in a Levenshtein automaton restricted to deletions. One pass over the text with a few
+ * word-sized operations per character, no backtracking and no allocation.
+ */
+public class FuzzyMatcher {
+    /** For every ASCII character, the element keys it matches (see {@link #keyOf(char)}) */
+    private static final char[][] ASCII_KEYS = buildAsciiKeys();
+
+    private final Lane forward;
+    private final Lane reversed;
+
+    /**
+     * @param word          - the normalized word
+     * @param maxOmissions  - how many letters between the first and last two may be left out
+     * @param matchReversed - also match the word written backwards
+     */
+    public FuzzyMatcher(String word, int maxOmissions, boolean matchReversed) {
+        forward = new Lane(word, Math.max(0, Math.min(maxOmissions, word.length() - 4)), 0);
+        reversed = matchReversed ? new Lane(new StringBuilder(word).reverse().toString(), 0, forward.stateSize()) : null;
+    }
+
+    private FuzzyMatcher(Lane forward, Lane reversed) {
+        this.forward = forward;
+        this.reversed = reversed;
+    }
+
+    /**
+     * Write the compiled automaton, see {@link #read}
+     */
+    public void write(DataOutputStream out) throws IOException {
+        forward.write(out);
+        out.writeBoolean(reversed != null);
+        if (reversed != null) reversed.write(out);
+    }
+
+    /**
+     * Read an automaton written by {@link #write} without compiling it again
+     */
+    public static FuzzyMatcher read(ByteBuffer in) {
+        Lane forward = new Lane(in);
+        Lane reversed = in.get() != 0 ? new Lane(in) : null;
+        return new FuzzyMatcher(forward, reversed);
+    }
+
+    /**
+     * Size of the state buffer {@link #find} needs
+     */
+    public int stateSize() {
+        return forward.stateSize() + (reversed != null ? reversed.stateSize() : 0);
+    }
+
+    /**
+     * Check if the word or one of its allowed variants occurs anywhere in the text
+     *
+     * @param state - scratch buffer of at least {@link #stateSize()} longs, contents are overwritten
+     */
+    public boolean find(CharSequence text, long[] state) {
+        Arrays.fill(state, 0, stateSize(), 0L);
+
+        boolean forwardLive = false;
+        boolean reversedLive = false;
+        boolean previousAlnum = false;
+
+        for (int p = 0; p < text.length(); p++) {
+            char c = text.charAt(p);
+            boolean alnum = isAsciiAlnum(c);
+
+            if (!alnum && (forwardLive && forward.accepting(state) || reversedLive && reversed.accepting(state))) {
+                return true;
+            }
+
+            boolean separator = isSeparator(c);
+            // Regexes read code points, so half of a surrogate pair never matched a letter
+            boolean paired = Character.isSurrogate(c) && isPaired(text, p);
+
+            forwardLive = forward.step(state, c, separator, !previousAlnum, paired, forwardLive);
+            if (reversed != null) reversedLive = reversed.step(state, c, separator, !previousAlnum, paired, reversedLive);
+
+            previousAlnum = alnum;
+        }
+
+        return forwardLive && forward.accepting(state) || reversedLive && reversed.accepting(state);
+    }
+
+    /**
+     * One word as a shift-and automaton with a level per number of omitted letters. Each level holds
+     * the "read" bits followed by the "gap" bits.
+     */
+    private static class Lane {
+        final int length;
+        final int words;
+        final int levels;
+        final int offset;
+        // Distinct element masks; index 0 is the empty mask
+        final long[][] masks;
+        final byte[] asciiMask;
+        final char[] otherChars;
+        final int[] otherMask;
+        final long[] gapMask;
+        final long[] omitMask;
+
+        Lane(String word, int maxOmissions, int offset) {
+            this.length = word.length();
+            this.words = (length + 63) >>> 6;
+            this.levels = maxOmissions + 1;
+            this.offset = offset;
+            this.gapMask = new long[words];
+            this.omitMask = new long[words];
+            this.asciiMask = new byte[128];
+
+            // Element i accepts every character whose keys contain keyOf(word[i])
+            TreeMap<Character, long[]> byKey = new TreeMap<>();
+            for (int i = 0; i < length; i++) {
+                byKey.computeIfAbsent(keyOf(word.charAt(i)), k -> new long[words])[i >>> 6] |= 1L << i;
+                if (i < length - 1) gapMask[i >>> 6] |= 1L << i;
+                // The first and last two letters are always required
+                if (i >= 2 && i < length - 2) omitMask[i >>> 6] |= 1L << i;
+            }
+
+            List<long[]> distinct = new ArrayList<>();
+            distinct.add(new long[words]);
+
+            for (char c = 0; c < 128; c++) {
+                long[] mask = new long[words];
+                for (char key : ASCII_KEYS[c]) {
+                    long[] keyMask = byKey.get(key);
+                    if (keyMask != null) {
+                        for (int w = 0; w < words; w++) mask[w] |= keyMask[w];
+                    }
+                }
+                asciiMask[c] = (byte) indexOf(distinct, mask);
+            }
+
+            // Non-ASCII elements only ever match themselves
+            List<Character> others = new ArrayList<>();
+            for (char key : byKey.keySet()) {
+                if (key >= 128) others.add(key);
+            }
+            otherChars = new char[others.size()];
+            otherMask = new int[others.size()];
+            for (int i = 0; i < otherChars.length; i++) {
+                otherChars[i] = others.get(i);
+                otherMask[i] = indexOf(distinct, byKey.get(otherChars[i]));
+            }
+
+            masks = distinct.toArray(new long[0][]);
+        }
+
+        Lane(ByteBuffer in) {
+            this.length = in.getInt();
+            this.words = (length + 63) >>> 6;
+            this.levels = in.getInt();
+            this.offset = in.getInt();
+            this.masks = new long[in.getInt()][];
+            for (int i = 0; i < masks.length; i++) masks[i] = BlacklistCache.readLongs(in);
+            this.asciiMask = BlacklistCache.readBytes(in);
+            this.otherChars = BlacklistCache.readChars(in);
+            this.otherMask = BlacklistCache.readInts(in);
+            this.gapMask = BlacklistCache.readLongs(in);
+            this.omitMask = BlacklistCache.readLongs(in);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(length);
+            out.writeInt(levels);
+            out.writeInt(offset);
+            out.writeInt(masks.length);
+            for (long[] mask : masks) BlacklistCache.writeLongs(out, mask);
+            BlacklistCache.writeBytes(out, asciiMask);
+            BlacklistCache.writeChars(out, otherChars);
+            BlacklistCache.writeInts(out, otherMask);
+            BlacklistCache.writeLongs(out, gapMask);
+            BlacklistCache.writeLongs(out, omitMask);
+        }
+
+        int stateSize() {
+            return 2 * words * levels;
+        }
+
+        /**
+         * Advance by one character
+         *
+         * @param live - whether any state was active before
+         * @return whether any state is active now
+         */
+        boolean step(long[] state, char c, boolean separator, boolean startAllowed, boolean paired, boolean live) {
+            long[] mask = masks[paired ? 0 : maskIndex(c)];
+
+            // Nothing running and nothing starting here; the state is all zero and stays so
+            if (!live && !(startAllowed && (mask[0] & 1) != 0)) return false;
+
+            long any = 0;
+
+            for (int d = 0; d < levels; d++) {
+                int read = offset + 2 * words * d;
+                int gap = read + words;
+
+                // High to low so the carry from the word below is still the old value
+                for (int w = words - 1; w >= 0; w--) {
+                    long active = state[read + w] | state[gap + w];
+                    long carry = w > 0 ? (state[read + w - 1] | state[gap + w - 1]) >>> 63 : (d == 0 && startAllowed ? 1 : 0);
+
+                    state[gap + w] = separator ? active & gapMask[w] : 0;
+                    state[read + w] = (state[read + w] | (active << 1) | carry) & mask[w];
+                }
+            }
+
+            // Leaving out the next letter moves to the gap after it, one level up
+            for (int d = 0; d < levels - 1; d++) {
+                int read = offset + 2 * words * d;
+                int gap = read + words;
+                int nextGap = gap + 2 * words;
+
+                for (int w = words - 1; w >= 0; w--) {
+                    long active = state[read + w] | state[gap + w];
+                    long carry = w > 0 ? (state[read + w - 1] | state[gap + w - 1]) >>> 63 : 0;
+                    state[nextGap + w] |= ((active << 1) | carry) & omitMask[w];
+                }
+            }
+
+            for (int i = offset; i < offset + stateSize(); i++) {
+                any |= state[i];
+            }
+            return any != 0;
+        }
+
+        boolean accepting(long[] state) {
+            int last = (length - 1) >>> 6;
+            long lastBit = 1L << (length - 1);
+            for (int d = 0; d < levels; d++) {
+                if ((state[offset + 2 * words * d + last] & lastBit) != 0) return true;
+            }
+            return false;
+        }
+
+        private int maskIndex(char c) {
+            if (c < 128) return asciiMask[c] & 0xFF;
+            int i = Arrays.binarySearch(otherChars, c);
+            return i >= 0 ? otherMask[i] : 0;
+        }
+    }
+
+    private static boolean isSeparator(char c) {
+        return switch (c) {
+            case ' ', '\t', '\n', '\u000B', '\f', '\r', '_', '.', '-' -> true;
+            default -> false;
+        };
+    }
+
+    private static boolean isPaired(CharSequence text, int p) {
+        char c = text.charAt(p);
+        if (Character.isHighSurrogate(c)) {
+            return p + 1 < text.length() && Character.isLowSurrogate(text.charAt(p + 1));
+        }
+        return p > 0 && Character.isHighSurrogate(text.charAt(p - 1));
+    }
+
+    private static int indexOf(List<long[]> distinct, long[] mask) {
+        for (int i = 0; i < distinct.size(); i++) {
+            if (Arrays.equals(distinct.get(i), mask)) return i;
+        }
+        distinct.add(mask);
+        return distinct.size() - 1;
+    }
+
+    /**
+     * The key of a word character: the head of its substitution group, or the character itself
+     * (lowercased if ASCII) when it has none
+     */
+    static char keyOf(char c) {
+        char lower = Character.toLowerCase(c);
+        for (String group : BlacklistFilter.SUBSTITUTION_GROUPS) {
+            if (group.charAt(0) == lower) return lower;
+        }
+        return c < 128 ? lower : c;
+    }
+
+    static boolean isAsciiAlnum(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+
+    private static char[][] buildAsciiKeys() {
+        char[][] table = new char[128][];
+        for (char c = 0; c < 128; c++) {
+            char lower = c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+            StringBuilder keys = new StringBuilder().append(lower);
+            for (String group : BlacklistFilter.SUBSTITUTION_GROUPS) {
+                if (group.indexOf(lower) >= 0 && group.charAt(0) != lower) keys.append(group.charAt(0));
+            }
+            table[c] = keys.toString().toCharArray();
+        }
+        return table;
+    }
+}
@@ -0,0 +1,58 @@
+package org.zeroBzeroT.chatCo;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reverse view of the loaded ignore lists: for every ignored player, the online players ignoring
+ * them. Lets chat filtering touch only the ignorers of a sender instead of every recipient.
+ */
+public class IgnoreIndex {
+    private final Map<UUID, Set<UUID>> ignorersByIgnored = new ConcurrentHashMap<>();
+
+    /**
+     * Get the online players ignoring a player
+     *
+     * @param ignored - the UUID of the ignored player
+     * @return a live, possibly empty view of the ignorers
+     */
+    public Set<UUID> getIgnorers(UUID ignored) {
+        Set<UUID> ignorers = ignorersByIgnored.get(ignored);
+        return ignorers != null ? ignorers : Collections.emptySet();
+    }
+
+    public void add(UUID ignorer, UUID ignored) {
+        ignorersByIgnored.compute(ignored, (key, ignorers) -> {
+            if (ignorers == null) ignorers = ConcurrentHashMap.newKeySet();
+            ignorers.add(ignorer);
+            return ignorers;
+        });
+    }
+
+    public void remove(UUID ignorer, UUID ignored) {
+        // Drop empty sets inside the same atomic step so a concurrent add cannot be lost
+        ignorersByIgnored.computeIfPresent(ignored, (key, ignorers) -> {
+            ignorers.remove(ignorer);
+            return ignorers.isEmpty() ? null : ignorers;
+        });
+    }
+
+    public void addAll(UUID ignorer, UUIDSet ignored) {
+        for (UUID uuid : ignored) {
+            add(ignorer, uuid);
+        }
+    }
+
+    public void removeAll(UUID ignorer, UUIDSet ignored) {
+        for (UUID uuid : ignored) {
+            remove(ignorer, uuid);
+        }
+    }
+
+    public void clear() {
+        ignorersByIgnored.clear();
+    }
+}
@@ -0,0 +1,564 @@
+package org.zeroBzeroT.chatCo;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of ignore list changes for all players in a single file, with the current state
+ * of every list held in memory.
+ * <p>
+ * Every change is one fixed-size record protected by a CRC32, so a torn write at the end of the
+ * file is detected and cut off on the next start. Compaction rewrites the live state into a new
+ * file that atomically replaces the log.
+ */
+public class IgnoreStore {
+    private static final int MAGIC = 0x43434947; // "CCIG"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int PAYLOAD_SIZE = 1 + 4 * Long.BYTES;
+    private static final int RECORD_SIZE = PAYLOAD_SIZE + Integer.BYTES;
+
+    private static final byte OP_ADD = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_CLEAR = 3;
+
+    // Compact once the log holds this many records more than there are live entries
+    private static final long COMPACTION_SLACK = 4096;
+
+    // Remote name lookups per batch of the import and the pause between batches, well below the
+    // few hundred lookups per ten minutes Mojang allows
+    private static final int IMPORT_BATCH_LOOKUPS = 50;
+    private static final long IMPORT_BATCH_INTERVAL_TICKS = 20L * 60;
+
+    private final Main plugin;
+    private final WriteBehindQueue writeQueue;
+    private final Path logFile;
+    private final Path compactFile;
+    private final Path pendingFile;
+    private final Map<UUID, UUIDSet> ignores = new ConcurrentHashMap<>();
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private long recordCount;
+    private long liveEntries;
+    private boolean compacting;
+
+    public IgnoreStore(Main plugin, WriteBehindQueue writeQueue, File file) {
+        this.plugin = plugin;
+        this.writeQueue = writeQueue;
+        this.logFile = file.toPath();
+        this.compactFile = file.toPath().resolveSibling(file.getName() + ".compact");
+        this.pendingFile = file.toPath().resolveSibling(file.getName() + ".pending");
+    }
+
+    /**
+     * Replay the log into memory, cutting off a damaged tail left by a crash
+     */
+    public synchronized void open() throws IOException {
+        // A leftover compaction file never replaced the log, so the log is still authoritative
+        Files.deleteIfExists(compactFile);
+        Files.createDirectories(logFile.getParent());
+
+        long validLength = HEADER_SIZE;
+
+        if (Files.exists(logFile) && Files.size(logFile) >= HEADER_SIZE) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(logFile), 1 << 16))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("Unknown ignore log format in " + logFile);
+                }
+
+                byte[] buffer = new byte[RECORD_SIZE];
+                ByteBuffer view = ByteBuffer.wrap(buffer);
+
+                while (true) {
+                    try {
+                        in.readFully(buffer);
+                    } catch (EOFException e) {
+                        break;
+                    }
+
+                    crc.reset();
+                    crc.update(buffer, 0, PAYLOAD_SIZE);
+                    if ((int) crc.getValue() != view.getInt(PAYLOAD_SIZE)) {
+                        break;
+                    }
+
+                    apply(view.get(0), new UUID(view.getLong(1), view.getLong(9)), new UUID(view.getLong(17), view.getLong(25)));
+                    recordCount++;
+                    validLength += RECORD_SIZE;
+                }
+            }
+        }
+
+        channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        if (channel.size() < HEADER_SIZE) {
+            writeHeader(channel);
+        } else if (channel.size() > validLength) {
+            plugin.getLogger().warning(String.format("Discarding %d damaged bytes at the end of %s", channel.size() - validLength, logFile.getFileName()));
+            channel.truncate(validLength);
+        }
+
+        channel.position(channel.size());
+    }
+
+    /**
+     * Mark the store as usable right away when there is nothing to import
+     */
+    public void markReady() {
+        ready.complete(null);
+    }
+
+    /**
+     * Check if the store can be used, i.e. no import of old ignore lists is running
+     */
+    public boolean isReady() {
+        return ready.isDone();
+    }
+
+    /**
+     * Get a future completed once the store is ready. Never wait on it from the server thread.
+     */
+    public CompletableFuture<Void> whenReady() {
+        return ready;
+    }
+
+    /**
+     * Get the ignore list of a player
+     *
+     * @return an immutable snapshot, never null
+     * @throws IllegalStateException if the store is not ready yet
+     */
+    public UUIDSet getIgnores(UUID owner) {
+        if (!isReady()) throw new IllegalStateException("Ignore lists are still being imported");
+        UUIDSet set = ignores.get(owner);
+        return set != null ? set : new UUIDSet();
+    }
+
+    /**
+     * Apply the change in memory and queue its record for the writer thread
+     *
+     * @return the new snapshot of the owner's ignore list
+     */
+    public synchronized UUIDSet add(UUID owner, UUID target) {
+        queue(OP_ADD, owner, target);
+        return apply(OP_ADD, owner, target);
+    }
+
+    /**
+     * Apply the change in memory and queue its record for the writer thread
+     *
+     * @return the new snapshot of the owner's ignore list
+     */
+    public synchronized UUIDSet remove(UUID owner, UUID target) {
+        queue(OP_REMOVE, owner, target);
+        return apply(OP_REMOVE, owner, target);
+    }
+
+    /**
+     * Apply the change in memory and queue its record for the writer thread
+     *
+     * @return the new, empty snapshot of the owner's ignore list
+     */
+    public synchronized UUIDSet clear(UUID owner) {
+        queue(OP_CLEAR, owner, owner);
+        return apply(OP_CLEAR, owner, owner);
+    }
+
+    /**
+     * Compact the log if it holds much more history than live state
+     */
+    public void compactIfNeeded() {
+        synchronized (this) {
+            if (channel == null || recordCount - liveEntries < Math.max(COMPACTION_SLACK, liveEntries)) {
+                return;
+            }
+        }
+
+        try {
+            compact();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to compact ignore log", e);
+        }
+    }
+
+    /**
+     * Rewrite the log so it holds one record per live entry, plus the records appended while it
+     * was rewritten.
+     * <p>
+     * Only taking the snapshot and swapping the files hold the lock; the snapshot is written and
+     * forced without it, so changes made meanwhile never wait for the disk. Ignore lists are
+     * immutable, so a copy of the map is a consistent snapshot.
+     */
+    public void compact() throws IOException {
+        final Map<UUID, UUIDSet> snapshot;
+        final long snapshotLength;
+        final long before;
+
+        synchronized (this) {
+            if (channel == null || compacting) return;
+            compacting = true;
+            snapshot = new HashMap<>(ignores);
+            snapshotLength = channel.size();
+            before = recordCount;
+        }
+
+        long written = 0;
+        long after;
+
+        try {
+            try (FileChannel out = FileChannel.open(compactFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                writeHeader(out);
+
+                // Own buffer and checksum: the shared ones belong to appends under the lock
+                ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 1024);
+                CRC32 checksum = new CRC32();
+                for (Map.Entry<UUID, UUIDSet> entry : snapshot.entrySet()) {
+                    for (UUID target : entry.getValue()) {
+                        if (buffer.remaining() < RECORD_SIZE) writeFully(out, buffer);
+                        encode(buffer, checksum, OP_ADD, entry.getKey(), target);
+                        written++;
+                    }
+                }
+                writeFully(out, buffer);
+                out.force(true);
+            }
+
+            synchronized (this) {
+                if (channel == null) {
+                    Files.deleteIfExists(compactFile);
+                    return;
+                }
+
+                // Records appended since the snapshot; replaying them on top of it is idempotent
+                long tail = channel.size() - snapshotLength;
+                try (FileChannel out = FileChannel.open(compactFile, StandardOpenOption.WRITE)) {
+                    out.position(out.size());
+                    for (long copied = 0; copied < tail; ) {
+                        copied += channel.transferTo(snapshotLength + copied, tail - copied, out);
+                    }
+                    out.force(true);
+                }
+
+                channel.close();
+                Files.move(compactFile, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+                channel = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                channel.position(channel.size());
+                recordCount = written + tail / RECORD_SIZE;
+                after = recordCount;
+            }
+        } finally {
+            synchronized (this) {
+                compacting = false;
+            }
+        }
+
+        plugin.getLogger().info(String.format("Compacted ignore log from %d to %d records", before, after));
+    }
+
+    /**
+     * One-shot import of the old per-player ignorelists directory. The directory is renamed once
+     * its entries are taken over, so the import never runs twice.
+     * <p>
+     * Entries that already use UUIDs go into the log right away and the store is ready after that.
+     * Old files may also name players, and resolving a name can take a remote lookup, so those
+     * entries are saved to a pending file and resolved in the background, see
+     * {@link #resumeImport()}. An unreadable file is skipped on its own.
+     */
+    public void importLegacyDirectory(File directory) {
+        try {
+            File[] files = directory.listFiles((dir, name) -> name.endsWith(".txt"));
+            if (files == null) return;
+
+            List<UUID> owners = new ArrayList<>();
+            List<UUID> targets = new ArrayList<>();
+            List<LegacyEntry> pending = new ArrayList<>();
+            int players = 0;
+
+            for (File file : files) {
+                String baseName = file.getName().substring(0, file.getName().length() - 4);
+                UUID owner = parseUUID(baseName);
+                // Oldest format named the file after the player
+                if (owner == null && !NameResolver.isValidName(baseName)) continue;
+
+                List<String> lines;
+                try {
+                    lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+                } catch (IOException e) {
+                    plugin.getLogger().log(Level.WARNING, "Skipping unreadable legacy ignore list " + file.getName(), e);
+                    continue;
+                }
+
+                for (String line : lines) {
+                    line = line.trim();
+                    UUID target = parseUUID(line);
+                    if (owner != null && target != null) {
+                        owners.add(owner);
+                        targets.add(target);
+                    } else if (target != null || NameResolver.isValidName(line)) {
+                        pending.add(new LegacyEntry(baseName, line));
+                    }
+                }
+                players++;
+            }
+
+            // Saved before the directory goes away, so a restart resumes the names instead of losing them
+            savePending(pending);
+            write(owners, targets);
+
+            File done = new File(directory.getParentFile(), directory.getName() + ".imported");
+            if (!directory.renameTo(done)) {
+                plugin.getLogger().warning("Could not rename " + directory + ", the import will run again on next start");
+            }
+
+            plugin.getLogger().info(String.format("Imported %d ignore entries of %d players into %s, %d entries naming players follow in the background",
+                    owners.size(), players, logFile.getFileName(), pending.size()));
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to import legacy ignore lists", e);
+        } finally {
+            ready.complete(null);
+        }
+
+        resumeImport();
+    }
+
+    /**
+     * Resolve the next batch of imported entries that name players, if any are left, and schedule
+     * the batch after it. Names the server already knows are taken without a lookup; at most
+     * {@link #IMPORT_BATCH_LOOKUPS} remote lookups are made per batch to stay clear of Mojang's
+     * rate limit. Names that cannot be resolved are logged and skipped.
+     */
+    public void resumeImport() {
+        if (!Files.exists(pendingFile)) return;
+
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            try {
+                resolvePending();
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Failed to import the ignore entries naming players", e);
+            }
+        });
+    }
+
+    private void resolvePending() throws IOException {
+        if (!Files.exists(pendingFile)) return;
+
+        NameResolver resolver = plugin.getNameResolver();
+        List<UUID> owners = new ArrayList<>();
+        List<UUID> targets = new ArrayList<>();
+        List<LegacyEntry> remaining = new ArrayList<>();
+        int lookups = 0;
+
+        for (String line : Files.readAllLines(pendingFile, StandardCharsets.UTF_8)) {
+            int tab = line.indexOf('\t');
+            if (tab < 0) continue;
+            LegacyEntry entry = new LegacyEntry(line.substring(0, tab), line.substring(tab + 1));
+
+            UUID owner = resolveCached(entry.owner(), resolver);
+            UUID target = resolveCached(entry.target(), resolver);
+
+            if (owner == null || target == null) {
+                if (lookups >= IMPORT_BATCH_LOOKUPS) {
+                    remaining.add(entry);
+                    continue;
+                }
+
+                if (owner == null) {
+                    owner = resolver.resolveVerified(entry.owner());
+                    lookups++;
+                }
+                if (owner != null && target == null) {
+                    target = resolver.resolveVerified(entry.target());
+                    lookups++;
+                }
+                if (owner == null || target == null) {
+                    plugin.getLogger().warning(String.format("Skipping imported ignore of %s by %s: %s could not be resolved",
+                            entry.target(), entry.owner(), owner == null ? entry.owner() : entry.target()));
+                    continue;
+                }
+            }
+
+            owners.add(owner);
+            targets.add(target);
+        }
+
+        write(owners, targets);
+        savePending(remaining);
+
+        // Players online now loaded their lists before these entries arrived
+        for (UUID owner : new HashSet<>(owners)) {
+            ChatPlayer chatPlayer = plugin.playerList.get(owner);
+            if (chatPlayer != null) chatPlayer.reloadIgnores();
+        }
+
+        if (remaining.isEmpty()) {
+            plugin.getLogger().info("Finished importing the ignore entries naming players");
+        } else {
+            plugin.getServer().getScheduler().runTaskLaterAsynchronously(plugin, this::resumeImport, IMPORT_BATCH_INTERVAL_TICKS);
+        }
+    }
+
+    /** Append imported entries and apply them in one go */
+    private synchronized void write(List<UUID> owners, List<UUID> targets) throws IOException {
+        for (int i = 0; i < owners.size(); i++) {
+            append(OP_ADD, owners.get(i), targets.get(i));
+            apply(OP_ADD, owners.get(i), targets.get(i));
+        }
+        if (channel != null) channel.force(false);
+    }
+
+    private void savePending(List<LegacyEntry> pending) throws IOException {
+        if (pending.isEmpty()) {
+            Files.deleteIfExists(pendingFile);
+            return;
+        }
+
+        StringBuilder data = new StringBuilder();
+        for (LegacyEntry entry : pending) {
+            data.append(entry.owner()).append('\t').append(entry.target()).append('\n');
+        }
+        Utils.writeFileAtomically(pendingFile.toFile(), data.toString());
+    }
+
+    /** A UUID as written, or a name the server knows without a remote lookup */
+    private static UUID resolveCached(String text, NameResolver resolver) {
+        UUID uuid = parseUUID(text);
+        return uuid != null ? uuid : resolver.resolveCached(text);
+    }
+
+    /**
+     * Close the log. Drain the write queue first so no queued record is lost.
+     */
+    public synchronized void close() {
+        if (channel == null) return;
+
+        try {
+            channel.force(true);
+            channel.close();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to close ignore log", e);
+        }
+        channel = null;
+    }
+
+    private void queue(byte op, UUID owner, UUID target) {
+        // Toggling the same pair supersedes the pending record; a clear keeps its own slot
+        writeQueue.submit(new RecordKey(owner, op == OP_CLEAR ? null : target), () -> {
+            synchronized (this) {
+                append(op, owner, target);
+            }
+        });
+    }
+
+    private void append(byte op, UUID owner, UUID target) throws IOException {
+        if (channel == null) {
+            throw new IOException("Ignore log is closed");
+        }
+        channel.write(encode(op, owner, target));
+        recordCount++;
+    }
+
+    private UUIDSet apply(byte op, UUID owner, UUID target) {
+        UUIDSet current = ignores.get(owner);
+        UUIDSet updated;
+
+        switch (op) {
+            case OP_ADD -> {
+                if (current != null && current.contains(target)) return current;
+                updated = current != null ? current.copy() : new UUIDSet();
+                updated.add(target);
+                liveEntries++;
+            }
+            case OP_REMOVE -> {
+                if (current == null || !current.contains(target)) return current != null ? current : new UUIDSet();
+                updated = current.copy();
+                updated.remove(target);
+                liveEntries--;
+            }
+            case OP_CLEAR -> {
+                if (current != null) liveEntries -= current.size();
+                ignores.remove(owner);
+                return new UUIDSet();
+            }
+            default -> {
+                return current != null ? current : new UUIDSet();
+            }
+        }
+
+        if (updated.isEmpty()) {
+            ignores.remove(owner);
+        } else {
+            ignores.put(owner, updated);
+        }
+        return updated;
+    }
+
+    private ByteBuffer encode(byte op, UUID owner, UUID target) {
+        record.clear();
+        encode(record, crc, op, owner, target);
+        return record.flip();
+    }
+
+    /** Put one record into a buffer */
+    private static void encode(ByteBuffer into, CRC32 checksum, byte op, UUID owner, UUID target) {
+        int start = into.position();
+        into.put(op)
+            .putLong(owner.getMostSignificantBits()).putLong(owner.getLeastSignificantBits())
+            .putLong(target.getMostSignificantBits()).putLong(target.getLeastSignificantBits());
+
+        checksum.reset();
+        checksum.update(into.array(), start, PAYLOAD_SIZE);
+        into.putInt((int) checksum.getValue());
+    }
+
+    /** Write out and clear a buffer that was filled with records */
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) out.write(buffer);
+        buffer.clear();
+    }
+
+    private static void writeHeader(FileChannel out) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip();
+        out.write(header, 0);
+        out.position(HEADER_SIZE);
+    }
+
+    private record RecordKey(UUID owner, UUID target) {
+    }
+
+    /** Ignore list entry of the old format, owner and target each a UUID or a player name */
+    private record LegacyEntry(String owner, String target) {
+    }
+
+    private static UUID parseUUID(String text) {
+        if (text.length() != 36 || text.charAt(8) != '-') return null;
+        try {
+            return UUID.fromString(text);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -3,26 +3,32 @@ package org.zeroBzeroT.chatCo;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
 
 import org.bukkit.event.entity.EntityDamageEvent;
 import org.bstats.bukkit.Metrics;
+import org.bstats.charts.SingleLineChart;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.PluginManager;
+import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scheduler.BukkitRunnable;
 import org.jetbrains.annotations.NotNull;
 
 import static org.zeroBzeroT.chatCo.Utils.componentFromLegacyText;
 import static org.zeroBzeroT.chatCo.Utils.saveStreamToFile;
+import static org.zeroBzeroT.chatCo.Utils.writeFileAtomically;
 
 public class Main extends JavaPlugin {
     public static File PermissionConfig;
@@ -30,8 +36,19 @@ public class Main extends JavaPlugin {
     public static File dataFolder;
     private static File Help;
     private Announcer announcer;
-    public Collection<ChatPlayer> playerList;
+    public ChatPlayerRegistry playerList;
+    public Set<UUID> chatDisabledPlayers;
+    private IgnoreIndex ignoreIndex;
+    private IgnoreStore ignoreStore;
+    private WriteBehindQueue writeQueue;
     private BlacklistFilter blacklistFilter;
+    // Replaced as a whole on reload; chat threads read them without locking
+    private volatile RateLimiter chatRateLimiter;
+    private volatile RateLimiter whisperRateLimiter;
+    private SlowMode slowMode;
+    // Rebuilt whenever the config is reloaded or saved; chat threads read only this
+    private volatile ChatConfig chatConfig;
+    private NameResolver nameResolver;
 
     @Override
     public void onDisable() {
@@ -39,6 +56,54 @@ public class Main extends JavaPlugin {
             announcer.disable();
         }
         playerList.clear();
+        chatDisabledPlayers.clear();
+        ignoreIndex.clear();
+
+        if (blacklistFilter != null) {
+            getServer().getServicesManager().unregisterAll(this);
+            blacklistFilter.close();
+        }
+
+        // Drain queued writes before the log they append to is closed
+        writeQueue.close();
+        writeQueue = null;
+        ignoreStore.close();
+    }
+
+    /**
+     * Snapshot the config on the calling thread and write it out on the writer thread. Repeated
+     * saves within one flush interval coalesce into a single write.
+     */
+    @Override
+    public void saveConfig() {
+        chatConfig = ChatConfig.load(getConfig());
+
+        if (writeQueue == null) {
+            super.saveConfig();
+            return;
+        }
+
+        final String data = getConfig().saveToString();
+        final File configFile = new File(getDataFolder(), "config.yml");
+        writeQueue.submit(configFile, () -> writeFileAtomically(configFile, data));
+    }
+
+    @Override
+    public void reloadConfig() {
+        // Queued saves must reach the disk before the file is read back
+        if (writeQueue != null) {
+            writeQueue.flush();
+        }
+        super.reloadConfig();
+        chatConfig = ChatConfig.load(getConfig());
+    }
+
+    /**
+     * Get the settings used while handling chat and whispers
+     * @return The snapshot of the current config
+     */
+    public ChatConfig getChatConfig() {
+        return chatConfig;
     }
 
     // Add this method to handle announcer reloading
@@ -58,6 +123,46 @@ public class Main extends JavaPlugin {
         return blacklistFilter;
     }
 
+    /**
+     * Get the rate limiter for public chat
+     * @return The limiter of public chat messages
+     */
+    public RateLimiter getChatRateLimiter() {
+        return chatRateLimiter;
+    }
+
+    /**
+     * Get the rate limiter for whisper commands
+     * @return The limiter of whispers, replies and /last
+     */
+    public RateLimiter getWhisperRateLimiter() {
+        return whisperRateLimiter;
+    }
+
+    /**
+     * Get the adaptive slow mode
+     * @return The slow mode of public chat
+     */
+    public SlowMode getSlowMode() {
+        return slowMode;
+    }
+
+    /**
+     * Get the player name resolver
+     * @return The name resolver instance
+     */
+    public NameResolver getNameResolver() {
+        return nameResolver;
+    }
+
+    /**
+     * Get the reverse ignore index
+     * @return The index of online ignorers per ignored player
+     */
+    public IgnoreIndex getIgnoreIndex() {
+        return ignoreIndex;
+    }
+
     /**
      * Reload the blacklist filter
      */
@@ -67,20 +172,41 @@ public class Main extends JavaPlugin {
         }
     }
 
+    /**
+     * Rebuild the rate limiters from the config. Buckets start full again.
+     */
+    public void reloadRateLimiters() {
+        // Without groups nobody is limited
+        final ConfigurationSection rateLimitGroups = getConfig().getBoolean("ChatCo.rateLimit.enabled", true)
+            ? getConfig().getConfigurationSection("ChatCo.rateLimit.groups") : null;
+        chatRateLimiter = new RateLimiter(rateLimitGroups, "chat");
+        whisperRateLimiter = new RateLimiter(rateLimitGroups, "whisper");
+    }
+
     @Override
     public void onEnable() {
-        playerList = Collections.synchronizedCollection(new ArrayList<>());
+        writeQueue = new WriteBehindQueue(getLogger());
+        chatDisabledPlayers = ConcurrentHashMap.newKeySet();
+        ignoreIndex = new IgnoreIndex();
+        nameResolver = new NameResolver(this);
         getConfig().options().copyDefaults(true);
         getConfig().options().parseComments(true);
 
         saveResourceFiles();
         toggleConfigValue(0);
+        openIgnoreStore();
+        playerList = new ChatPlayerRegistry(ignoreStore, ignoreIndex, this::loadChatPlayerAsync);
 
         // Initialize blacklist filter
-        blacklistFilter = new BlacklistFilter(this);
+        blacklistFilter = new BlacklistFilter(this, writeQueue, new File(Main.dataFolder, "blacklist.cache"));
+        // Let other plugins run signs, books, names etc. through the same filter
+        getServer().getServicesManager().register(BlacklistFilter.class, blacklistFilter, this, ServicePriority.Normal);
+
+        reloadRateLimiters();
+        slowMode = new SlowMode(this);
 
         final PluginManager pm = getServer().getPluginManager();
-        // Register public chat listener with duplicate blocking
+        // Registered only here; a second registration would run every chat gate twice per message
         pm.registerEvents(new PublicChat(this), this);
         pm.registerEvents(new BlackholeModule(this), this);
 
@@ -92,14 +218,44 @@ public class Main extends JavaPlugin {
             announcer = new Announcer(this);
         }
 
+        // Warm up players that are already online, e.g. after /reload
+        for (final Player player : getServer().getOnlinePlayers()) {
+            getChatPlayer(player);
+        }
+
         if (getConfig().getBoolean("ChatCo.bStats", false)) {
-            @SuppressWarnings("unused")
             Metrics metrics = new Metrics(this, 16309);
+            metrics.addCustomChart(new SingleLineChart("rate_limited_chat", () -> (int) chatRateLimiter.takeLimitedCount()));
+            metrics.addCustomChart(new SingleLineChart("rate_limited_whispers", () -> (int) whisperRateLimiter.takeLimitedCount()));
         }
 
         getLogger().info("ChatCo enabled.");
     }
 
+    private void openIgnoreStore() {
+        ignoreStore = new IgnoreStore(this, writeQueue, new File(Main.dataFolder, "ignores.log"));
+
+        try {
+            ignoreStore.open();
+        } catch (IOException e) {
+            getLogger().log(Level.SEVERE, "Failed to open the ignore log, ignores will not be saved", e);
+            ignoreStore.markReady();
+            return;
+        }
+
+        // Move the old one-file-per-player lists into the log once, off the main thread
+        final File legacyIgnoreLists = new File(Main.dataFolder, "ignorelists");
+        if (legacyIgnoreLists.isDirectory()) {
+            getServer().getScheduler().runTaskAsynchronously(this, () -> ignoreStore.importLegacyDirectory(legacyIgnoreLists));
+        } else {
+            ignoreStore.markReady();
+            // Names left over from an import interrupted by a restart
+            ignoreStore.resumeImport();
+        }
+
+        getServer().getScheduler().runTaskTimerAsynchronously(this, ignoreStore::compactIfNeeded, 20L * 600, 20L * 600);
+    }
+
     @SuppressWarnings("ResultOfMethodCallIgnored")
     private void saveResourceFiles() {
         Main.dataFolder = getDataFolder();
@@ -159,11 +315,7 @@ public class Main extends JavaPlugin {
                     return true;
                 }
 
-                try {
-                    unIgnoreAll(player);
-                } catch (IOException e) {
-                    getLogger().warning(String.format("Error while unignoring all players: %s", e.getMessage()));
-                }
+                unIgnoreAll(player);
 
                 return true;
             } else if (cmd.getName().equalsIgnoreCase("ignore")) {
@@ -177,19 +329,12 @@ public class Main extends JavaPlugin {
                     return true;
                 }
 
-                try {
-                    ignorePlayer(player, args[0]);
-                } catch (IllegalArgumentException e) {
+                if (!NameResolver.isValidName(args[0])) {
                     sender.sendMessage(componentFromLegacyText("&cYou entered an invalid player name."));
-                } catch (IOException e) {
-                    getLogger().warning(String.format("Error while ignoring player: %s", e.getMessage()));
-                }
-
-                final Player ignore = Bukkit.getPlayer(args[0]);
-                if (ignore == null) {
-                    sender.sendMessage(componentFromLegacyText("&cYou have entered a player who does not exist or is offline."));
+                    return true;
                 }
 
+                ignorePlayer(player, args[0]);
                 return true;
             } else if (cmd.getName().equalsIgnoreCase("ignored")) {
                 if (!(sender instanceof Player)) {
@@ -197,14 +342,20 @@ public class Main extends JavaPlugin {
                     return true;
                 }
 
-                final ChatPlayer chatter = getChatPlayer(player);
-                final List<String> ignoreList = chatter.getIgnoreList();
+                final ChatPlayer chatter = getLoadedChatPlayer(player);
+                if (chatter == null) return true;
+
+                final UUIDSet ignoreList = chatter.getIgnoreList();
                 int i = ignoreList.size();
 
                 sender.sendMessage(componentFromLegacyText("&eIgnored players:"));
 
                 if (i > 0) {
-                    String ignores = String.join(", ", ignoreList);
+                    final List<String> names = new ArrayList<>(i);
+                    for (final UUID uuid : ignoreList) {
+                        names.add(nameResolver.nameOf(uuid));
+                    }
+                    String ignores = String.join(", ", names);
                     sender.sendMessage(componentFromLegacyText("&e&o" + ignores));
                 }
 
@@ -326,10 +477,32 @@ public class Main extends JavaPlugin {
                 saveConfig();
                 reloadAnnouncer();
                 reloadBlacklistFilter();
+                reloadRateLimiters();
                 sender.sendMessage("Config reloaded");
                 return true;
             }
 
+            if (args.length == 1 && args[0].equalsIgnoreCase("slowmode")) {
+                if (!sender.hasPermission("ChatCo.admin.slowmode")) {
+                    sender.sendMessage("You don't have permission to view the slow mode");
+                    return true;
+                }
+
+                if (!slowMode.isEnabled()) {
+                    sender.sendMessage("Slow mode is disabled in the config");
+                    return true;
+                }
+
+                long cooldown = slowMode.getCooldownMillis();
+                sender.sendMessage(cooldown > 0
+                        ? String.format("Slow mode: ON, %.1fs between messages", cooldown / 1000.0)
+                        : "Slow mode: OFF");
+                sender.sendMessage(String.format("Chat: %.1f messages/s (threshold %.1f)",
+                        slowMode.getMessagesPerSecond(), slowMode.getMessagesPerSecondThreshold()));
+                sender.sendMessage(String.format("MSPT: %.1f (threshold %.1f)", slowMode.getMspt(), slowMode.getMsptThreshold()));
+                return true;
+            }
+
             if (args.length >= 2 && args[0].equalsIgnoreCase("blacklist")) {
                 // Check if the sender has the blacklist management permission
                 if (!sender.hasPermission("ChatCo.admin.blacklist")) {
@@ -354,7 +527,7 @@ public class Main extends JavaPlugin {
                         blacklist.add(word);
                         getConfig().set("ChatCo.wordBlacklist", blacklist);
                         saveConfig();
-                        reloadBlacklistFilter();
+                        blacklistFilter.addWord(word);
                         sender.sendMessage("Added \"" + word + "\" to blacklist");
                     } else {
                         sender.sendMessage("Word \"" + word + "\" is already blacklisted");
@@ -370,7 +543,7 @@ public class Main extends JavaPlugin {
                         blacklist.remove(word);
                         getConfig().set("ChatCo.wordBlacklist", blacklist);
                         saveConfig();
-                        reloadBlacklistFilter();
+                        blacklistFilter.removeWord(word);
                         sender.sendMessage("Removed \"" + word + "\" from blacklist");
                     } else {
                         sender.sendMessage("Word \"" + word + "\" is not in the blacklist");
@@ -378,6 +551,16 @@ public class Main extends JavaPlugin {
                     return true;
                 }
 
+                if (args[1].equalsIgnoreCase("stats")) {
+                    VerdictCache cache = blacklistFilter.getVerdictCache();
+                    long hits = cache.getHits();
+                    long lookups = hits + cache.getMisses();
+                    sender.sendMessage(String.format("Verdict cache: %d hits, %d misses (%.1f%% hit rate), %d slots",
+                            hits, cache.getMisses(), lookups == 0 ? 0.0 : 100.0 * hits / lookups, cache.getCapacity()));
+                    sender.sendMessage(String.format("Over budget: %d messages", blacklistFilter.getOverBudgetCount()));
+                    return true;
+                }
+
                 if (args[1].equalsIgnoreCase("list")) {
                     // List blacklisted words
                     List<String> blacklist = getConfig().getStringList("ChatCo.wordBlacklist");
@@ -428,30 +611,41 @@ public class Main extends JavaPlugin {
         return false;
     }
 
+    /**
+     * Get the chat state of a player without blocking. A player seen for the first time gets an
+     * empty, not yet loaded state and their ignore list is read in the background.
+     */
     public ChatPlayer getChatPlayer(final Player p) {
-        for (final ChatPlayer chatPlayer : playerList) {
-            if (chatPlayer.playerUUID.equals(p.getUniqueId())) {
-                return chatPlayer;
-            }
-        }
-
-        ChatPlayer newChatPlayer = null;
+        return playerList.getOrCreate(p);
+    }
 
-        try {
-            newChatPlayer = new ChatPlayer(p);
-            playerList.add(newChatPlayer);
-        } catch (IOException e) {
-            getLogger().warning(String.format("Error creating ChatPlayer: %s", e.getMessage()));
+    /**
+     * Get the chat state of a player with its ignore list loaded, loading it on the calling
+     * thread if the background load has not finished yet. Meant for commands, not for chat.
+     *
+     * @return null if the ignore lists are still being imported; the player has been told so
+     */
+    private ChatPlayer getLoadedChatPlayer(final Player p) {
+        final ChatPlayer chatPlayer = getChatPlayer(p);
+        if (!chatPlayer.load()) {
+            p.sendMessage(componentFromLegacyText("&cIgnore lists are still loading, please try again in a moment."));
+            return null;
         }
+        return chatPlayer;
+    }
 
-        return newChatPlayer;
+    private void loadChatPlayerAsync(final ChatPlayer chatPlayer) {
+        // During an import of old ignore lists the load waits for it without holding a thread
+        ignoreStore.whenReady().thenRun(() -> getServer().getScheduler().runTaskAsynchronously(this, chatPlayer::load));
     }
 
     private boolean toggleChat(final Player p) {
         if (getChatPlayer(p).chatDisabled) {
+            chatDisabledPlayers.remove(p.getUniqueId());
             return getChatPlayer(p).chatDisabled = false;
         }
 
+        chatDisabledPlayers.add(p.getUniqueId());
         return getChatPlayer(p).chatDisabled = true;
     }
 
@@ -463,19 +657,38 @@ public class Main extends JavaPlugin {
         return getChatPlayer(p).tellsDisabled = true;
     }
 
-    private void ignorePlayer(final Player p, final String target) throws IOException {
-        final ChatPlayer chatter = getChatPlayer(p);
-        chatter.saveIgnoreList(target);
-        boolean isNowIgnored = chatter.isIgnored(target);
+    private void ignorePlayer(final Player p, final String target) {
+        // Names of players that are not online may need a remote lookup, so finish off-thread
+        nameResolver.resolveAsync(target).thenAccept(targetUUID -> {
+            if (!p.isOnline()) return;
 
-        String message = "&eChat messages from " + target + " will be ";
-        message += isNowIgnored ? "hidden." : "visible.";
+            final ChatPlayer chatter = getLoadedChatPlayer(p);
+            if (chatter == null) return;
 
-        p.sendMessage(componentFromLegacyText(message));
+            final boolean isNowIgnored = chatter.saveIgnoreList(targetUUID);
+
+            String message = "&eChat messages from " + target + " will be ";
+            message += isNowIgnored ? "hidden." : "visible.";
+
+            p.sendMessage(componentFromLegacyText(message));
+
+            if (getServer().getPlayer(targetUUID) == null) {
+                p.sendMessage(componentFromLegacyText("&cYou have entered a player who does not exist or is offline."));
+            }
+        }).exceptionally(e -> {
+            // Mostly a failed remote lookup; without this the command would end in silence
+            getLogger().log(Level.WARNING, "Could not ignore " + target + " for " + p.getName(), e);
+            if (p.isOnline()) {
+                p.sendMessage(componentFromLegacyText("&cCould not look up " + target + ", please try again later."));
+            }
+            return null;
+        });
     }
 
-    private void unIgnoreAll(final Player p) throws IOException {
-        final ChatPlayer chatter = getChatPlayer(p);
+    private void unIgnoreAll(final Player p) {
+        final ChatPlayer chatter = getLoadedChatPlayer(p);
+        if (chatter == null) return;
+
         chatter.unIgnoreAll();
 
         String message = "&eIgnore list deleted.";
@@ -489,7 +702,11 @@ public class Main extends JavaPlugin {
     }
 
     public void remove(Player player) {
-        playerList.removeIf(p -> p.player.equals(player));
+        playerList.remove(player);
+        chatDisabledPlayers.remove(player.getUniqueId());
+        chatRateLimiter.remove(player.getUniqueId());
+        whisperRateLimiter.remove(player.getUniqueId());
+        slowMode.remove(player.getUniqueId());
     }
 
     private void toggleConfigValue(final int change) {
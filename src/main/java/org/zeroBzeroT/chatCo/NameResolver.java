@@ -0,0 +1,159 @@
+package org.zeroBzeroT.chatCo;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.java.JavaPlugin;
+
+/**
+ * Resolves player names to UUIDs and back. Online players are answered directly, everything else
+ * goes through a bounded cache and, on a miss, a lookup on an async thread since that may hit the
+ * Mojang API.
+ */
+public class NameResolver {
+    // Java edition names, optionally with the leading dot Floodgate uses for Bedrock players
+    private static final Pattern VALID_NAME = Pattern.compile("^\\.?\\w{1,16}$");
+    private static final int MAX_CACHE_SIZE = 10_000;
+
+    private final JavaPlugin plugin;
+    private final Map<String, UUID> uuidByName = new ConcurrentHashMap<>();
+    private final Map<UUID, String> nameByUUID = new ConcurrentHashMap<>();
+
+    public NameResolver(JavaPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Check if a string can be a player name at all
+     */
+    public static boolean isValidName(String name) {
+        return name != null && VALID_NAME.matcher(name).matches();
+    }
+
+    /**
+     * Resolve a name without blocking the caller. The future completes on the calling thread when
+     * the answer is known locally and on an async thread otherwise.
+     */
+    public CompletableFuture<UUID> resolveAsync(String name) {
+        UUID uuid = resolveCached(name);
+        if (uuid != null) {
+            return CompletableFuture.completedFuture(uuid);
+        }
+
+        CompletableFuture<UUID> future = new CompletableFuture<>();
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            try {
+                future.complete(resolve(name));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Resolve a name from online players, the cache and the server's user cache only
+     *
+     * @return the UUID or null if a remote lookup would be needed
+     */
+    public UUID resolveCached(String name) {
+        Player online = plugin.getServer().getPlayerExact(name);
+        if (online != null) {
+            return online.getUniqueId();
+        }
+
+        UUID uuid = uuidByName.get(name.toLowerCase());
+        if (uuid != null) {
+            return uuid;
+        }
+
+        OfflinePlayer known = plugin.getServer().getOfflinePlayerIfCached(name);
+        if (known != null) {
+            remember(known.getUniqueId(), name);
+            return known.getUniqueId();
+        }
+
+        return null;
+    }
+
+    /**
+     * Resolve a name, blocking on a remote lookup if needed. Never call this on the main thread.
+     */
+    @SuppressWarnings("deprecation")
+    public UUID resolve(String name) {
+        UUID uuid = resolveCached(name);
+        if (uuid != null) {
+            return uuid;
+        }
+
+        uuid = plugin.getServer().getOfflinePlayer(name).getUniqueId();
+        remember(uuid, name);
+        return uuid;
+    }
+
+    /**
+     * Resolve a name like {@link #resolve}, but without inventing an answer: on an online-mode
+     * server a failed or rate-limited lookup falls back to the offline-mode UUID of the name, which
+     * belongs to nobody. Never call this on the main thread.
+     *
+     * @return the UUID or null if the name could not be resolved
+     */
+    @SuppressWarnings("deprecation")
+    public UUID resolveVerified(String name) {
+        UUID uuid = resolveCached(name);
+        if (uuid != null) {
+            return uuid;
+        }
+
+        uuid = plugin.getServer().getOfflinePlayer(name).getUniqueId();
+        if (plugin.getServer().getOnlineMode()
+                && uuid.equals(UUID.nameUUIDFromBytes(("OfflinePlayer:" + name).getBytes(StandardCharsets.UTF_8)))) {
+            return null;
+        }
+
+        remember(uuid, name);
+        return uuid;
+    }
+
+    /**
+     * Get the last known name of a player without blocking
+     *
+     * @return the name, or the UUID as a string if the player was never seen
+     */
+    public String nameOf(UUID uuid) {
+        Player online = plugin.getServer().getPlayer(uuid);
+        if (online != null) {
+            return online.getName();
+        }
+
+        String name = nameByUUID.get(uuid);
+        if (name != null) {
+            return name;
+        }
+
+        name = plugin.getServer().getOfflinePlayer(uuid).getName();
+        if (name != null) {
+            remember(uuid, name);
+            return name;
+        }
+
+        return uuid.toString();
+    }
+
+    private void remember(UUID uuid, String name) {
+        // Crude bound; entries are cheap to look up again
+        if (uuidByName.size() >= MAX_CACHE_SIZE) {
+            uuidByName.clear();
+            nameByUUID.clear();
+        }
+
+        uuidByName.put(name.toLowerCase(), uuid);
+        nameByUUID.put(uuid, name);
+    }
+}
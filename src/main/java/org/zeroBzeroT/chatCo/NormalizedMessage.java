@@ -0,0 +1,149 @@
+package org.zeroBzeroT.chatCo;
+
+/**
+ * The forms of a message the chat checks compare, derived in one pass instead of by each check:
+ * <ul>
+ * <li>the folded text: lowercased, without color codes and trimmed, for duplicates</li>
+ * <li>the letters and digits of the folded text, for spam waves</li>
+ * <li>whether it has non-ASCII text, see {@link Utils#containsUnicode}</li>
+ * </ul>
+ * Every thread fills the same instance and buffers for each message, so nothing is allocated once
+ * they have grown to the longest message. An instance stays valid only until the next
+ * {@link #of} on the same thread; do not keep it beyond the event it was made for.
+ */
+public class NormalizedMessage {
+    private static final ThreadLocal<NormalizedMessage> BUFFERS = ThreadLocal.withInitial(NormalizedMessage::new);
+
+    private String message;
+    private boolean unicode;
+    private static final char[] ASCII_LOWER = new char[128];
+    private static final int[] ASCII_LETTER_OR_DIGIT = new int[128];
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            ASCII_LOWER[c] = Character.toLowerCase(c);
+            ASCII_LETTER_OR_DIGIT[c] = Character.isLetterOrDigit(c) ? 1 : 0;
+        }
+    }
+
+    private char[] folded = new char[256];
+    private int foldedLength;
+    private char[] letters = new char[256];
+    private int letterCount;
+
+    private NormalizedMessage() {
+    }
+
+    /**
+     * Normalize a message into this thread's buffers
+     */
+    public static NormalizedMessage of(String message) {
+        NormalizedMessage normalized = BUFFERS.get();
+        normalized.fill(message);
+        return normalized;
+    }
+
+    private void fill(String message) {
+        this.message = message;
+        if (folded.length < message.length()) {
+            folded = new char[Math.max(message.length(), folded.length * 2)];
+            letters = new char[folded.length];
+        }
+
+        char[] folded = this.folded;
+        char[] letters = this.letters;
+        boolean unicode = false;
+        int length = 0;
+        int end = 0;
+        int letterCount = 0;
+
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            int letterOrDigit;
+
+            if (c < 128) {
+                c = ASCII_LOWER[c];
+                letterOrDigit = ASCII_LETTER_OR_DIGIT[c];
+            } else if (c == '§' && isColorCode(message, i)) {
+                i++;
+                continue;
+            } else {
+                unicode |= c != '§';
+                c = Character.toLowerCase(c);
+                letterOrDigit = Character.isLetterOrDigit(c) ? 1 : 0;
+            }
+
+            // Written unconditionally and counted arithmetically: which characters are letters or
+            // whitespace is random to the branch predictor
+            folded[length++] = c;
+            end = c > ' ' ? length : end;
+            letters[letterCount] = c;
+            letterCount += letterOrDigit;
+        }
+
+        // Trim
+        int start = 0;
+        while (start < end && folded[start] <= ' ') start++;
+        if (start > 0) System.arraycopy(folded, start, folded, 0, end - start);
+
+        this.unicode = unicode;
+        this.foldedLength = end - start;
+        this.letterCount = letterCount;
+    }
+
+    /**
+     * Check if a message has no text besides whitespace and color codes, without building the
+     * stripped string
+     */
+    public static boolean isBlank(String message) {
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (c == '§' && isColorCode(message, i)) {
+                i++;
+            } else if (c > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Matches the codes removed by {@link Utils#stripColor} */
+    private static boolean isColorCode(String text, int index) {
+        if (text.charAt(index) != '§' || index + 1 >= text.length()) return false;
+        char c = Character.toLowerCase(text.charAt(index + 1));
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'k' && c <= 'o') || c == 'r' || c == 'x';
+    }
+
+    /** Get the message as sent */
+    public String message() {
+        return message;
+    }
+
+    /** Check if the message has characters outside ASCII, other than the section sign */
+    public boolean containsUnicode() {
+        return unicode;
+    }
+
+    /** Check if the message has no text besides whitespace and color codes */
+    public boolean isBlank() {
+        return foldedLength == 0;
+    }
+
+    /** Get the buffer holding the folded text; only the first {@link #foldedLength()} chars are valid */
+    char[] folded() {
+        return folded;
+    }
+
+    int foldedLength() {
+        return foldedLength;
+    }
+
+    /** Get the buffer holding the letters and digits; only the first {@link #letterCount()} chars are valid */
+    char[] letters() {
+        return letters;
+    }
+
+    int letterCount() {
+        return letterCount;
+    }
+}
@@ -1,10 +1,12 @@
 package org.zeroBzeroT.chatCo;
 
 import java.io.File;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 import org.bukkit.configuration.file.FileConfiguration;
@@ -14,12 +16,12 @@ import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.AsyncPlayerChatEvent;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerKickEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 
 import static org.zeroBzeroT.chatCo.Utils.componentFromLegacyText;
-import static org.zeroBzeroT.chatCo.Utils.containsUnicode;
-import static org.zeroBzeroT.chatCo.Utils.getDirectColorCode;
 import static org.zeroBzeroT.chatCo.Utils.parseFormattingTags;
 import static org.zeroBzeroT.chatCo.Utils.stripColor;
 
@@ -27,55 +29,96 @@ public class PublicChat implements Listener {
     public static Main plugin = null;
     private final FileConfiguration permissionConfig;
 
+    // Near-duplicate fingerprints kept server-wide, and how many bits variants may differ in
+    private static final int SPAM_WAVE_HISTORY_SIZE = 4096;
+    private static final int SPAM_WAVE_MAX_DISTANCE = 8;
+
     // Track recent messages per player for duplicate detection
-    private final HashMap<UUID, LinkedList<String>> recentMessages = new HashMap<>();
-    private final int duplicateThreshold;
-    private final int duplicateHistorySize;
+    private final DuplicateDetector duplicates;
+    // Null if disabled
+    private final SpamWaveDetector spamWaves;
+    private final boolean cancelSpamWaves;
+
+    // Colors each player may use, compiled against the rewriter of the config they were looked up for
+    private static final long COLOR_PERMISSION_TTL_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private final Map<UUID, ColorPermissions> colorPermissions = new ConcurrentHashMap<>();
+
+    private record ColorPermissions(ColorRewriter colors, long allowed, long expires) {
+    }
 
     public PublicChat(final Main plugin) {
         PublicChat.plugin = plugin;
         File customConfig = Main.PermissionConfig;
         permissionConfig = YamlConfiguration.loadConfiguration(customConfig);
-        plugin.getServer().getPluginManager().registerEvents(this, plugin);
 
-        this.duplicateThreshold = plugin.getConfig().getInt("ChatCo.duplicateMessageThreshold", 2);
-        this.duplicateHistorySize = plugin.getConfig().getInt("ChatCo.duplicateMessageHistorySize", 5);
+        this.duplicates = new DuplicateDetector(
+            plugin.getConfig().getInt("ChatCo.duplicateMessageHistorySize", 5),
+            plugin.getConfig().getInt("ChatCo.duplicateMessageThreshold", 2),
+            plugin.getConfig().getLong("ChatCo.duplicateMessageWindowSeconds", 0), TimeUnit.SECONDS);
+
+        if (plugin.getConfig().getBoolean("ChatCo.spamWave.enabled", true)) {
+            this.spamWaves = new SpamWaveDetector(SPAM_WAVE_HISTORY_SIZE,
+                plugin.getConfig().getInt("ChatCo.spamWave.threshold", 5), SPAM_WAVE_MAX_DISTANCE,
+                plugin.getConfig().getInt("ChatCo.spamWave.minLength", 16),
+                plugin.getConfig().getLong("ChatCo.spamWave.windowSeconds", 60), TimeUnit.SECONDS);
+        } else {
+            this.spamWaves = null;
+        }
+        this.cancelSpamWaves = "cancel".equalsIgnoreCase(plugin.getConfig().getString("ChatCo.spamWave.action", "flag"));
     }
 
     public String replacePrefixColors(String message, final Player player) {
-        for (String colorName : Utils.getNamedColors().keySet()) {
-            String prefix = plugin.getConfig().getString("ChatCo.chatPrefixes." + colorName);
-            if (prefix != null && message.startsWith(prefix)) {
-                if (permissionConfig.getBoolean("ChatCo.chatPrefixes." + colorName, false) ||
-                        player.hasPermission("ChatCo.chatPrefixes." + colorName)) {
-                    message = getDirectColorCode(colorName) + message;
-                }
-                break;
-            }
-        }
-        return message;
+        ColorRewriter colors = plugin.getChatConfig().colors();
+        String prefix = colors.prefixCode(message, colorPermissions(player, colors));
+        return prefix != null ? prefix + message : message;
     }
 
     public String replaceInlineColors(String message, final Player player) {
-        for (String colorName : Utils.getNamedColors().keySet()) {
-            String configColorCode = plugin.getConfig().getString("ChatCo.chatColors." + colorName);
-            if (configColorCode != null &&
-                    (permissionConfig.getBoolean("ChatCo.chatColors." + colorName, false) ||
-                            player.hasPermission("ChatCo.chatColors." + colorName))) {
-                message = message.replace(configColorCode, getDirectColorCode(colorName));
-            }
-        }
-        return message;
+        ColorRewriter colors = plugin.getChatConfig().colors();
+        return colors.rewriteMarkers(message, null, colorPermissions(player, colors));
+    }
+
+    /**
+     * Get the colors a player may use, see {@link ColorRewriter#permissions}. The result is cached
+     * until the config is reloaded, the player changes worlds or leaves, or it is older than
+     * {@link #COLOR_PERMISSION_TTL_NANOS}, which covers permission changes Bukkit has no event for.
+     */
+    private long colorPermissions(Player player, ColorRewriter colors) {
+        long now = System.nanoTime();
+        ColorPermissions cached = colorPermissions.get(player.getUniqueId());
+        if (cached != null && cached.colors == colors && now - cached.expires < 0) return cached.allowed;
+
+        long allowed = colors.permissions(player, permissionConfig);
+        colorPermissions.put(player.getUniqueId(), new ColorPermissions(colors, allowed, now + COLOR_PERMISSION_TTL_NANOS));
+        return allowed;
     }
 
     @EventHandler(priority = EventPriority.LOWEST)
     public void preProcessChat(AsyncPlayerChatEvent event) {
         Player player = event.getPlayer();
         String message = event.getMessage();
+        ChatConfig config = plugin.getChatConfig();
+
+        // Flood protection before any of the more expensive checks
+        if (!plugin.getChatRateLimiter().tryAcquire(player)) {
+            player.sendMessage(componentFromLegacyText("&cYou are sending messages too fast!"));
+            event.setCancelled(true);
+            return;
+        }
+
+        if (!plugin.getSlowMode().tryAcquire(player)) {
+            player.sendMessage(componentFromLegacyText(String.format("&cSlow mode is on, you can chat every %.1f seconds.",
+                plugin.getSlowMode().getCooldownMillis() / 1000.0)));
+            event.setCancelled(true);
+            return;
+        }
+
+        // Lowercased, stripped and trimmed once for all the checks below
+        NormalizedMessage normalized = NormalizedMessage.of(message);
 
         // Check for Unicode blocking
-        if (plugin.getConfig().getBoolean("ChatCo.blockUnicodeText", false) && containsUnicode(message)) {
-            if (plugin.getConfig().getBoolean("ChatCo.debugUnicodeBlocking", false)) {
+        if (config.blockUnicodeText() && normalized.containsUnicode()) {
+            if (config.debugUnicodeBlocking()) {
                 plugin.getLogger().info("Blocked unicode message from " + player.getName() + ": " + message);
             }
             event.setCancelled(true);
@@ -84,7 +127,7 @@ public class PublicChat implements Listener {
 
         // Check for blacklisted words
         if (plugin.getBlacklistFilter().containsBlacklistedWord(message)) {
-            if (plugin.getConfig().getBoolean("ChatCo.debugBlacklistBlocking", false)) {
+            if (config.debugBlacklistBlocking()) {
                 plugin.getLogger().info("Blocked blacklisted word from " + player.getName() + ": " + message);
             }
             event.setCancelled(true);
@@ -92,32 +135,26 @@ public class PublicChat implements Listener {
         }
 
         // Count-based duplicate prevention
-        LinkedList<String> history = recentMessages.computeIfAbsent(player.getUniqueId(), k -> new LinkedList<>());
-        String strippedMessage = stripColor(message.toLowerCase().trim());
-        int duplicateCount = 0;
-        for (String pastMessage : history) {
-            if (strippedMessage.equals(stripColor(pastMessage.toLowerCase().trim()))) {
-                duplicateCount++;
-            }
-        }
-
-        if (duplicateCount >= duplicateThreshold) {
+        if (duplicates.isDuplicate(player.getUniqueId(), normalized)) {
             player.sendMessage(componentFromLegacyText("&cYou are sending duplicate messages too often!"));
             event.setCancelled(true);
             return;
         }
 
-        history.add(message);
-        if (history.size() > duplicateHistorySize) {
-            history.removeFirst();
+        // Near-duplicates of the message posted by other players, e.g. a bot wave
+        if (spamWaves != null && spamWaves.isSpamWave(player.getUniqueId(), normalized)) {
+            plugin.getLogger().info("Possible spam wave from " + player.getName() + ": " + message);
+            if (cancelSpamWaves) {
+                event.setCancelled(true);
+                return;
+            }
         }
 
         // Apply colors and formatting
-        String legacyMessage = replacePrefixColors(message, player);
-        legacyMessage = replaceInlineColors(legacyMessage, player);
+        String legacyMessage = config.colors().rewrite(message, colorPermissions(player, config.colors()));
         legacyMessage = parseFormattingTags(legacyMessage);
 
-        if (stripColor(legacyMessage).trim().isEmpty()) {
+        if (NormalizedMessage.isBlank(legacyMessage)) {
             event.setCancelled(true);
             return;
         }
@@ -128,30 +165,28 @@ public class PublicChat implements Listener {
     @EventHandler(priority = EventPriority.HIGH, ignoreCancelled = true)
     public void filterChatRecipients(AsyncPlayerChatEvent event) {
         Player player = event.getPlayer();
-        boolean chatDisabledGlobal = plugin.getConfig().getBoolean("ChatCo.chatDisabled", false);
-        if (chatDisabledGlobal) {
+        ChatConfig config = plugin.getChatConfig();
+        if (config.chatDisabled()) {
             event.setCancelled(true);
             return;
         }
 
         boolean isBlackholed = BlackholeModule.isPlayerBlacklisted(player);
 
-        Iterator<Player> iterator = event.getRecipients().iterator();
-        while (iterator.hasNext()) {
-            Player recipient = iterator.next();
-            if (recipient.equals(player)) continue;
-
-            ChatPlayer chatPlayer = plugin.getChatPlayer(recipient);
-            if (chatPlayer != null) {
-                if (chatPlayer.chatDisabled || 
-                        (chatPlayer.isIgnored(player.getName()) && plugin.getConfig().getBoolean("ChatCo.ignoresEnabled", true))) {
-                    iterator.remove();
-                }
+        // Only touch the players that ignore the sender or have chat disabled
+        Set<Player> recipients = event.getRecipients();
+        if (config.ignoresEnabled()) {
+            for (UUID ignorer : plugin.getIgnoreIndex().getIgnorers(player.getUniqueId())) {
+                removeRecipient(recipients, ignorer, player);
             }
         }
 
+        for (UUID chatDisabled : plugin.chatDisabledPlayers) {
+            removeRecipient(recipients, chatDisabled, player);
+        }
+
         if (isBlackholed) {
-            iterator = event.getRecipients().iterator();
+            Iterator<Player> iterator = recipients.iterator();
             while (iterator.hasNext()) {
                 Player recipient = iterator.next();
                 if (!recipient.equals(player)) iterator.remove();
@@ -163,25 +198,46 @@ public class PublicChat implements Listener {
         }
     }
 
+    private void removeRecipient(Set<Player> recipients, UUID uuid, Player sender) {
+        Player recipient = plugin.getServer().getPlayer(uuid);
+        if (recipient != null && !recipient.equals(sender)) {
+            recipients.remove(recipient);
+        }
+    }
+
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = false)
     public void logChatToConsole(AsyncPlayerChatEvent event) {
         if (event.isCancelled()) return;
-        if (!plugin.getConfig().getBoolean("ChatCo.chatToConsole", true)) return;
+        if (!plugin.getChatConfig().chatToConsole()) return;
 
         Player player = event.getPlayer();
         String fullMessage = "<" + stripColor(player.getDisplayName()) + "> " + stripColor(event.getMessage());
         plugin.getLogger().log(Level.INFO, "[CHAT] {0}", fullMessage);
     }
 
+    @EventHandler
+    public void onPlayerJoin(PlayerJoinEvent e) {
+        // Start loading the ignore list now instead of on the first chat line
+        plugin.getChatPlayer(e.getPlayer());
+    }
+
+    @EventHandler
+    public void onPlayerChangedWorld(PlayerChangedWorldEvent e) {
+        // Permission plugins commonly grant per world
+        colorPermissions.remove(e.getPlayer().getUniqueId());
+    }
+
     @EventHandler
     public void onPlayerQuit(PlayerQuitEvent e) {
         plugin.remove(e.getPlayer());
-        recentMessages.remove(e.getPlayer().getUniqueId());
+        duplicates.remove(e.getPlayer().getUniqueId());
+        colorPermissions.remove(e.getPlayer().getUniqueId());
     }
 
     @EventHandler
     public void onPlayerKick(PlayerKickEvent e) {
         plugin.remove(e.getPlayer());
-        recentMessages.remove(e.getPlayer().getUniqueId());
+        duplicates.remove(e.getPlayer().getUniqueId());
+        colorPermissions.remove(e.getPlayer().getUniqueId());
     }
 }
@@ -0,0 +1,121 @@
+package org.zeroBzeroT.chatCo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+
+/**
+ * Per-player token bucket for one kind of message, e.g. public chat or whispers.
+ * <p>
+ * A bucket holds up to its capacity in tokens and refills at a fixed rate; every message takes
+ * one. Instead of a token count and a refill time, a bucket stores the single time at which it
+ * will be full again: a message is allowed if that time is at most capacity - 1 refill intervals
+ * ahead, and pushes it one interval further. That is one long, updated with compare-and-set, so
+ * checking a message never locks and never allocates.
+ * <p>
+ * Limits come from permission groups: a player gets the first group in the config whose
+ * permission {@code ChatCo.rateLimit.<group>} they have, or "default". The group is looked up
+ * once per player and session.
+ */
+public class RateLimiter {
+    private static final String DEFAULT_GROUP = "default";
+
+    private final List<Group> groups = new ArrayList<>();
+    private final Group fallback;
+    private final Map<UUID, Bucket> buckets = new ConcurrentHashMap<>();
+    private final LongAdder limited = new LongAdder();
+
+    /**
+     * @param groups  - the group sections, in the order they are tried
+     * @param channel - prefix of the group keys, e.g. "chat" for chatCapacity and chatPerSecond
+     */
+    public RateLimiter(ConfigurationSection groups, String channel) {
+        Group fallback = null;
+
+        if (groups != null) {
+            for (String name : groups.getKeys(false)) {
+                Group group = new Group(name,
+                    groups.getInt(name + "." + channel + "Capacity", 0),
+                    groups.getDouble(name + "." + channel + "PerSecond", 0));
+
+                if (name.equals(DEFAULT_GROUP)) fallback = group;
+                else this.groups.add(group);
+            }
+        }
+
+        this.fallback = fallback != null ? fallback : new Group(DEFAULT_GROUP, 0, 0);
+    }
+
+    /**
+     * Take a token for a message
+     *
+     * @return false if the player is over their limit and the message should be dropped
+     */
+    public boolean tryAcquire(Player player) {
+        Bucket bucket = buckets.get(player.getUniqueId());
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(player.getUniqueId(), k -> new Bucket(groupOf(player)));
+        }
+        if (bucket.interval == 0) return true;
+
+        long now = System.nanoTime();
+        while (true) {
+            long full = bucket.full.get();
+            // A time in the past means the bucket is full, and stays full
+            long start = full - now > 0 ? full : now;
+            if (start - now > bucket.tolerance) {
+                limited.increment();
+                return false;
+            }
+            if (bucket.full.compareAndSet(full, start + bucket.interval)) return true;
+        }
+    }
+
+    /**
+     * Forget a player's bucket, e.g. when they leave
+     */
+    public void remove(UUID player) {
+        buckets.remove(player);
+    }
+
+    /** Get the number of messages dropped since the last call, e.g. for metrics */
+    public long takeLimitedCount() {
+        return limited.sumThenReset();
+    }
+
+    private Group groupOf(Player player) {
+        for (Group group : groups) {
+            if (player.hasPermission("ChatCo.rateLimit." + group.name)) return group;
+        }
+        return fallback;
+    }
+
+    /**
+     * @param capacity  - messages that may be sent in a burst, 0 for no limit
+     * @param perSecond - rate at which tokens come back, 0 for no limit
+     */
+    private record Group(String name, int capacity, double perSecond) {
+    }
+
+    private static class Bucket {
+        // Nanos between two tokens, 0 for no limit
+        final long interval;
+        // How far ahead the full time may be before a message is refused
+        final long tolerance;
+        final AtomicLong full;
+
+        Bucket(Group group) {
+            boolean unlimited = group.capacity <= 0 || group.perSecond <= 0;
+            this.interval = unlimited ? 0 : Math.max(1, (long) (1_000_000_000L / group.perSecond));
+            this.tolerance = unlimited ? 0 : (group.capacity - 1) * interval;
+            this.full = new AtomicLong(System.nanoTime());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.zeroBzeroT.chatCo;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.Normalizer;
+import java.util.Arrays;
+
+/**
+ * Reduces text to its confusable skeleton: lowercase, NFKC, then the Unicode confusables mapping
+ * (UTS #39), so look-alike characters compare equal.
+ * <p>
+ * The mapping is generated from ICU at build time into confusables.bin (see
+ * org.zeroBzeroT.chatCo.build.ConfusablesTableGenerator), so ICU is not needed at runtime. As in
+ * ICU's SpoofChecker the text is decomposed (NFD), mapped code point by code point and decomposed
+ * again.
+ * <p>
+ * For pure ASCII text all steps work character by character, so the skeleton is the concatenation
+ * of the skeletons of its characters. Those are computed once, and ASCII messages - most of the
+ * chat - never touch the normalizer.
+ */
+public class Skeletonizer {
+    private static final String TABLE_RESOURCE = "/confusables.bin";
+    private static final int TABLE_MAGIC = 0x43434346;
+    private static final int TABLE_VERSION = 1;
+
+    private final int[] codePoints;
+    private final int[] ends;
+    private final char[] prototypes;
+    private final String[] asciiSkeletons = new String[128];
+
+    public Skeletonizer() {
+        this(Skeletonizer.class.getResourceAsStream(TABLE_RESOURCE));
+    }
+
+    /**
+     * Read the table from a stream instead of the plugin jar, so the build can check a freshly
+     * generated one
+     *
+     * @param stream - the table, closed when read; null fails as a missing resource
+     */
+    public Skeletonizer(InputStream stream) {
+        try (stream) {
+            if (stream == null) {
+                throw new IllegalStateException("Missing resource " + TABLE_RESOURCE);
+            }
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+            if (in.readInt() != TABLE_MAGIC || in.readInt() != TABLE_VERSION) {
+                throw new IllegalStateException("Unsupported format of " + TABLE_RESOURCE);
+            }
+
+            int count = in.readInt();
+            codePoints = new int[count];
+            ends = new int[count];
+            for (int i = 0; i < count; i++) codePoints[i] = in.readInt();
+            for (int i = 0; i < count; i++) ends[i] = in.readInt();
+
+            prototypes = new char[in.readInt()];
+            for (int i = 0; i < prototypes.length; i++) prototypes[i] = in.readChar();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read " + TABLE_RESOURCE, e);
+        }
+
+        for (char c = 0; c < 128; c++) {
+            asciiSkeletons[c] = fullSkeleton(String.valueOf(c));
+        }
+    }
+
+    /** Normalize and generate spoof skeleton */
+    public String skeleton(String input) {
+        String ascii = asciiSkeleton(input);
+        return ascii != null ? ascii : fullSkeleton(input);
+    }
+
+    /**
+     * Table lookup for ASCII text
+     *
+     * @return the skeleton or null if the input is not pure ASCII
+     */
+    String asciiSkeleton(String input) {
+        StringBuilder skeleton = null;
+
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c >= 128) return null;
+
+            String mapped = asciiSkeletons[c];
+            if (skeleton == null) {
+                // Copy the unchanged prefix only once something differs
+                if (mapped.length() == 1 && mapped.charAt(0) == c) continue;
+                skeleton = new StringBuilder(input.length() + 16).append(input, 0, i);
+            }
+            skeleton.append(mapped);
+        }
+
+        return skeleton != null ? skeleton.toString() : input;
+    }
+
+    /** The full path through the normalizer and the confusables table */
+    String fullSkeleton(String input) {
+        String lower = input.toLowerCase();
+        String normalized = Normalizer.normalize(lower, Normalizer.Form.NFKC);
+        String decomposed = Normalizer.normalize(normalized, Normalizer.Form.NFD);
+
+        StringBuilder mapped = new StringBuilder(decomposed.length() + 16);
+        for (int i = 0; i < decomposed.length(); ) {
+            int cp = decomposed.codePointAt(i);
+            int index = Arrays.binarySearch(codePoints, cp);
+
+            if (index >= 0) {
+                int start = index == 0 ? 0 : ends[index - 1];
+                mapped.append(prototypes, start, ends[index] - start);
+            } else {
+                mapped.appendCodePoint(cp);
+            }
+
+            i += Character.charCount(cp);
+        }
+
+        return Normalizer.normalize(mapped, Normalizer.Form.NFD);
+    }
+}
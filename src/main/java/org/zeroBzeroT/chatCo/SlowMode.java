@@ -0,0 +1,146 @@
+package org.zeroBzeroT.chatCo;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bukkit.entity.Player;
+
+/**
+ * Adaptive server-wide slow mode. Once a second it looks at the chat throughput and the server's
+ * MSPT; when either is over its threshold every player gets a cooldown between messages, growing
+ * with the overload up to a maximum. When the load is gone the cooldown decays by half every
+ * half-life instead of dropping at once, so chat does not flood right back.
+ * <p>
+ * Messages are counted in one striped counter per second, so chat threads only ever increment a
+ * {@link LongAdder}; the counter of the oldest second is reset and reused by the timer.
+ */
+public class SlowMode {
+    private static final int WINDOW_SECONDS = 10;
+    // Cooldowns below this are switched off instead of lingering as a barely noticeable delay
+    private static final long MIN_COOLDOWN_MILLIS = 500;
+
+    private final Main plugin;
+    private final boolean enabled;
+    private final double messagesPerSecondThreshold;
+    private final double msptThreshold;
+    private final long baseCooldownMillis;
+    private final long maxCooldownMillis;
+    private final double decayPerSecond;
+
+    // One counter per second of the window plus the one currently counting
+    private final LongAdder[] counters = new LongAdder[WINDOW_SECONDS + 1];
+    private volatile int current;
+
+    private final Map<UUID, AtomicLong> lastMessage = new ConcurrentHashMap<>();
+
+    private volatile long cooldownMillis;
+    private volatile double messagesPerSecond;
+    private volatile double mspt;
+
+    public SlowMode(Main plugin) {
+        this.plugin = plugin;
+        this.enabled = plugin.getConfig().getBoolean("ChatCo.slowMode.enabled", true);
+        this.messagesPerSecondThreshold = plugin.getConfig().getDouble("ChatCo.slowMode.messagesPerSecond", 20);
+        this.msptThreshold = plugin.getConfig().getDouble("ChatCo.slowMode.mspt", 40);
+        this.baseCooldownMillis = (long) (plugin.getConfig().getDouble("ChatCo.slowMode.cooldownSeconds", 2) * 1000);
+        this.maxCooldownMillis = (long) (plugin.getConfig().getDouble("ChatCo.slowMode.maxCooldownSeconds", 10) * 1000);
+        double halfLife = plugin.getConfig().getDouble("ChatCo.slowMode.relaxHalfLifeSeconds", 15);
+        this.decayPerSecond = halfLife > 0 ? Math.pow(0.5, 1 / halfLife) : 0;
+
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+
+        if (enabled) {
+            plugin.getServer().getScheduler().runTaskTimer(plugin, this::update, 20L, 20L);
+        }
+    }
+
+    /**
+     * Count a public chat message and check the player's cooldown
+     *
+     * @return false if the message should be dropped
+     */
+    public boolean tryAcquire(Player player) {
+        // Demand, not what got through, or the slow mode would hide the load it reacts to
+        counters[current].increment();
+
+        long cooldown = cooldownMillis;
+
+        if (cooldown > 0 && !player.hasPermission("ChatCo.slowmode.bypass")) {
+            AtomicLong last = lastMessage.computeIfAbsent(player.getUniqueId(), k -> new AtomicLong(Long.MIN_VALUE));
+            long now = System.nanoTime();
+            long previous = last.get();
+
+            if (previous != Long.MIN_VALUE && now - previous < TimeUnit.MILLISECONDS.toNanos(cooldown)) return false;
+            // Lost a race against another message of the same player
+            if (!last.compareAndSet(previous, now)) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Forget a player's last message time, e.g. when they leave
+     */
+    public void remove(UUID player) {
+        lastMessage.remove(player);
+    }
+
+    /** Close the current second and adjust the cooldown; runs on the main thread once a second */
+    private void update() {
+        int next = (current + 1) % counters.length;
+        counters[next].reset();
+        current = next;
+
+        long messages = 0;
+        for (int i = 0; i < counters.length; i++) {
+            if (i != next) messages += counters[i].sum();
+        }
+        messagesPerSecond = (double) messages / WINDOW_SECONDS;
+        mspt = plugin.getServer().getAverageTickTime();
+
+        double pressure = Math.max(messagesPerSecond / messagesPerSecondThreshold, mspt / msptThreshold);
+        long target = pressure > 1 ? (long) Math.min(maxCooldownMillis, baseCooldownMillis * pressure) : 0;
+        long relaxed = (long) (cooldownMillis * decayPerSecond);
+        long cooldown = Math.max(target, relaxed);
+
+        if (cooldown < MIN_COOLDOWN_MILLIS) {
+            cooldown = 0;
+            // Nothing to enforce, so nothing to remember
+            if (cooldownMillis > 0) lastMessage.clear();
+        }
+        cooldownMillis = cooldown;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Get the current cooldown between two messages of a player, 0 when slow mode is off */
+    public long getCooldownMillis() {
+        return cooldownMillis;
+    }
+
+    /** Get the average public chat messages per second over the window, including dropped ones */
+    public double getMessagesPerSecond() {
+        return messagesPerSecond;
+    }
+
+    /** Get the milliseconds per tick seen at the last update */
+    public double getMspt() {
+        return mspt;
+    }
+
+    public double getMessagesPerSecondThreshold() {
+        return messagesPerSecondThreshold;
+    }
+
+    public double getMsptThreshold() {
+        return msptThreshold;
+    }
+}
@@ -0,0 +1,115 @@
+package org.zeroBzeroT.chatCo;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Server-wide near-duplicate detection against bot waves, where many accounts post slightly
+ * different versions of the same message.
+ * <p>
+ * Every message is reduced to a 64-bit SimHash over the character trigrams of its letters and
+ * digits; variants of one text differ in a few bits, unrelated texts in about half of them. The
+ * last messages of all players are kept in a ring that threads claim slots of atomically, so
+ * recording and scanning never lock. A scan of the whole ring is a few thousand bit counts, which
+ * is cheaper than maintaining an index at this size.
+ */
+public class SpamWaveDetector {
+    private static final int SHINGLE = 3;
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final AtomicLong cursor = new AtomicLong();
+    private final int threshold;
+    private final int maxDistance;
+    private final int minLength;
+    private final long windowNanos;
+
+    /**
+     * @param capacity    - number of recent messages kept, rounded up to a power of two
+     * @param threshold   - a message near-duplicated by this many other players is spam
+     * @param maxDistance - most bits two fingerprints may differ in to count as near-duplicates
+     * @param minLength   - shorter messages, e.g. "gg", are neither checked nor recorded
+     * @param window      - how long a message counts
+     */
+    public SpamWaveDetector(int capacity, int threshold, int maxDistance, int minLength, long window, TimeUnit unit) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.threshold = threshold;
+        this.maxDistance = maxDistance;
+        this.minLength = minLength;
+        this.windowNanos = unit.toNanos(window);
+    }
+
+    /**
+     * Record a message and check if it is part of a wave
+     *
+     * @return true if enough other players recently sent near-duplicates of it
+     */
+    public boolean isSpamWave(UUID player, NormalizedMessage message) {
+        if (message.letterCount() < Math.max(minLength, SHINGLE)) return false;
+
+        long fingerprint = fingerprint(message.letters(), message.letterCount());
+        long now = System.nanoTime();
+
+        // Players, not messages: the same player's copies, or a message recorded twice, add nothing
+        UUID[] senders = null;
+        int count = 0;
+        for (int i = 0; i < slots.length() && count < threshold; i++) {
+            Entry entry = slots.get(i);
+            if (entry != null && now - entry.time < windowNanos && !entry.player.equals(player)
+                    && Long.bitCount(entry.fingerprint ^ fingerprint) <= maxDistance) {
+                if (senders == null) senders = new UUID[threshold];
+                if (!contains(senders, count, entry.player)) senders[count++] = entry.player;
+            }
+        }
+
+        // Recorded even when it is spam, so the wave keeps being recognized
+        int slot = (int) (cursor.getAndIncrement() & (slots.length() - 1));
+        slots.set(slot, new Entry(fingerprint, player, now));
+
+        return count >= threshold;
+    }
+
+    private static boolean contains(UUID[] players, int count, UUID player) {
+        for (int i = 0; i < count; i++) {
+            if (players[i].equals(player)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * SimHash of the trigrams of the letters and digits of a message, see {@link NormalizedMessage}:
+     * every bit is the majority vote of that bit over the hashes of all trigrams
+     */
+    static long fingerprint(char[] text, int length) {
+        int[] votes = new int[Long.SIZE];
+        for (int i = 0; i + SHINGLE <= length; i++) {
+            long h = 0;
+            for (int j = i; j < i + SHINGLE; j++) h = h * 31 + text[j];
+            h = mix(h);
+            for (int bit = 0; bit < Long.SIZE; bit++) {
+                votes[bit] += (int) ((h >>> bit) & 1) * 2 - 1;
+            }
+        }
+
+        long fingerprint = 0;
+        for (int bit = 0; bit < Long.SIZE; bit++) {
+            if (votes[bit] > 0) fingerprint |= 1L << bit;
+        }
+        return fingerprint;
+    }
+
+    /** Spread the bits of a trigram evenly over the hash */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private record Entry(long fingerprint, UUID player, long time) {
+    }
+}
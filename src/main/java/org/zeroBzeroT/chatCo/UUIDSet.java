@@ -0,0 +1,204 @@
+package org.zeroBzeroT.chatCo;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+/**
+ * Open-addressing hash set of UUIDs stored as pairs of primitive longs.
+ * <p>
+ * Each table slot costs 17 bytes (about 23 to 45 bytes per entry at the used load factor) instead
+ * of a String or UUID object plus a collection node. The set is not thread-safe; shared instances
+ * are treated as immutable and replaced by modified copies.
+ */
+public final class UUIDSet implements Iterable<UUID> {
+    private static final int MIN_CAPACITY = 4;
+
+    // keys[2 * slot] holds the most significant bits, keys[2 * slot + 1] the least significant bits
+    private long[] keys;
+    private boolean[] used;
+    private int size;
+
+    public UUIDSet() {
+        this(0);
+    }
+
+    public UUIDSet(final int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    private UUIDSet(final UUIDSet other) {
+        this.keys = other.keys.clone();
+        this.used = other.used.clone();
+        this.size = other.size;
+    }
+
+    /**
+     * @return an independent copy of this set
+     */
+    public UUIDSet copy() {
+        return new UUIDSet(this);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(final UUID uuid) {
+        return uuid != null && contains(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    public boolean contains(final long msb, final long lsb) {
+        final int mask = used.length - 1;
+        int slot = hash(msb, lsb) & mask;
+
+        while (used[slot]) {
+            if (keys[2 * slot] == msb && keys[2 * slot + 1] == lsb) return true;
+            slot = (slot + 1) & mask;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return true if the UUID was not already in the set
+     */
+    public boolean add(final UUID uuid) {
+        final long msb = uuid.getMostSignificantBits();
+        final long lsb = uuid.getLeastSignificantBits();
+
+        if (contains(msb, lsb)) return false;
+
+        if ((size + 1) * 4L > used.length * 3L) {
+            rehash(used.length * 2);
+        }
+
+        insert(msb, lsb);
+        size++;
+        return true;
+    }
+
+    /**
+     * @return true if the UUID was in the set
+     */
+    public boolean remove(final UUID uuid) {
+        if (uuid == null) return false;
+
+        final long msb = uuid.getMostSignificantBits();
+        final long lsb = uuid.getLeastSignificantBits();
+        final int mask = used.length - 1;
+        int slot = hash(msb, lsb) & mask;
+
+        while (used[slot]) {
+            if (keys[2 * slot] == msb && keys[2 * slot + 1] == lsb) {
+                deleteSlot(slot);
+                size--;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return false;
+    }
+
+    public void clear() {
+        allocate(MIN_CAPACITY);
+        size = 0;
+    }
+
+    @Override
+    public Iterator<UUID> iterator() {
+        return new Iterator<>() {
+            private int slot = advance(0);
+
+            private int advance(int from) {
+                while (from < used.length && !used[from]) from++;
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return slot < used.length;
+            }
+
+            @Override
+            public UUID next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                final UUID uuid = new UUID(keys[2 * slot], keys[2 * slot + 1]);
+                slot = advance(slot + 1);
+                return uuid;
+            }
+        };
+    }
+
+    /** Backward-shift deletion keeps probe chains intact without tombstones */
+    private void deleteSlot(int slot) {
+        final int mask = used.length - 1;
+        int next = (slot + 1) & mask;
+
+        while (used[next]) {
+            final int home = hash(keys[2 * next], keys[2 * next + 1]) & mask;
+
+            // Move the entry back if its home slot does not lie cyclically in (slot, next]
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                keys[2 * slot] = keys[2 * next];
+                keys[2 * slot + 1] = keys[2 * next + 1];
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+
+        used[slot] = false;
+        keys[2 * slot] = 0L;
+        keys[2 * slot + 1] = 0L;
+    }
+
+    private void insert(final long msb, final long lsb) {
+        final int mask = used.length - 1;
+        int slot = hash(msb, lsb) & mask;
+
+        while (used[slot]) {
+            slot = (slot + 1) & mask;
+        }
+
+        used[slot] = true;
+        keys[2 * slot] = msb;
+        keys[2 * slot + 1] = lsb;
+    }
+
+    private void rehash(final int capacity) {
+        final long[] oldKeys = keys;
+        final boolean[] oldUsed = used;
+        allocate(capacity);
+
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (oldUsed[i]) insert(oldKeys[2 * i], oldKeys[2 * i + 1]);
+        }
+    }
+
+    private void allocate(final int capacity) {
+        keys = new long[capacity * 2];
+        used = new boolean[capacity];
+    }
+
+    private static int capacityFor(final int expectedSize) {
+        // Smallest power of two that keeps the load factor at or below 3/4
+        final long needed = Math.max(MIN_CAPACITY, (expectedSize * 4L + 2) / 3);
+        return (int) Math.min(1 << 30, Long.highestOneBit(needed - 1) << 1);
+    }
+
+    private static int hash(final long msb, final long lsb) {
+        // MurmurHash3 fmix64 finalizer over both halves
+        long h = msb * 31 + lsb;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93fe53a87cdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
@@ -4,7 +4,10 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.HashMap;
@@ -38,6 +41,9 @@ public class Utils {
     // Pattern for detecting formatting tags like <RED> or <BOLD>
     public static final Pattern FORMAT_PATTERN = Pattern.compile("<([A-Z_]+)>");
 
+    // Pattern for legacy color and format codes like §c
+    private static final Pattern COLOR_PATTERN = Pattern.compile("(?i)§[0-9A-FK-ORX]");
+
     static {
         // Standard Minecraft colors (using NamedTextColor constants)
         NAMED_COLORS.put("BLACK", NamedTextColor.BLACK);
@@ -104,8 +110,8 @@ public class Utils {
      * @return the text without color codes
      */
     public static String stripColor(String text) {
-        if (text == null) return null;
-        return Pattern.compile("(?i)§[0-9A-FK-ORX]").matcher(text).replaceAll("");
+        if (text == null || text.indexOf('§') < 0) return text;
+        return COLOR_PATTERN.matcher(text).replaceAll("");
     }
 
     /**
@@ -271,6 +277,17 @@ public class Utils {
         }
     }
 
+    /**
+     * Writes a string to a file through a temporary file, so readers and crashes never see a
+     * partially written file
+     */
+    public static void writeFileAtomically(final File file, final String data) throws IOException {
+        final Path target = file.toPath();
+        final Path temp = target.resolveSibling(file.getName() + ".tmp");
+        Files.writeString(temp, data, StandardCharsets.UTF_8);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
     /**
      * returns a formatted Date/Time string
      */
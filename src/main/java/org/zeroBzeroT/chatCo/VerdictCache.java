@@ -0,0 +1,99 @@
+package org.zeroBzeroT.chatCo;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded concurrent cache of filter verdicts keyed by the raw message. Spam waves repeat the same
+ * few messages over and over; every repeat after the first skips normalization and matching.
+ * <p>
+ * The cache is direct-mapped: the hash of a message picks one slot and a new verdict replaces
+ * whatever was there, which bounds the size without any bookkeeping. Entries expire after a fixed
+ * time, and the full message is kept so a hash collision is never mistaken for a hit.
+ */
+public class VerdictCache {
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+    private final long ttlNanos;
+    // Bumped by clear(); entries of older generations count as missing
+    private final AtomicInteger generation = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param capacity - number of slots, rounded up to a power of two
+     * @param ttl      - how long a verdict stays valid
+     */
+    public VerdictCache(int capacity, long ttl, TimeUnit unit) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.ttlNanos = unit.toNanos(ttl);
+    }
+
+    /**
+     * Get the cached verdict for a message
+     *
+     * @return the verdict or null if it is not cached
+     */
+    public Boolean get(String message) {
+        Entry entry = slots.get(slot(message));
+
+        if (entry != null && entry.generation == generation.get()
+                && System.nanoTime() - entry.created < ttlNanos && entry.message.equals(message)) {
+            hits.increment();
+            return entry.verdict;
+        }
+
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Get the generation to pass to {@link #put}; read it before computing the verdict
+     */
+    public int generation() {
+        return generation.get();
+    }
+
+    /**
+     * Cache a verdict unless the cache was cleared since it was computed
+     */
+    public void put(String message, boolean verdict, int generation) {
+        if (generation != this.generation.get()) return;
+        slots.set(slot(message), new Entry(message, verdict, generation, System.nanoTime()));
+    }
+
+    /**
+     * Drop all cached verdicts, e.g. when the blacklist changed
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, null);
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int getCapacity() {
+        return slots.length();
+    }
+
+    private int slot(String message) {
+        // Spread the bits; String.hashCode is weak in the low bits for short strings
+        int h = message.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private record Entry(String message, boolean verdict, int generation, long created) {
+    }
+}
@@ -35,13 +35,8 @@ public class Whispers implements Listener {
         Objects.requireNonNull(sender, "Sender cannot be null");
         Objects.requireNonNull(target, "Target cannot be null");
 
-        String key = send ? "ChatCo.whisperFormat.send" : "ChatCo.whisperFormat.receive";
-        String legacyMessage = plugin.getConfig().getString(key,
-                send ? "&7To &f%RECEIVER%&7: " : "&7From &f%SENDER%&7: ");
-
-        for (Map.Entry<String, String> entry : COLOR_PLACEHOLDER_MAP.entrySet()) {
-            legacyMessage = legacyMessage.replace(entry.getKey(), getDirectColorCode(entry.getValue()));
-        }
+        ChatConfig config = plugin.getChatConfig();
+        String legacyMessage = send ? config.whisperFormatSend() : config.whisperFormatReceive();
 
         return LegacyComponentSerializer.legacySection().deserialize(
                 legacyMessage.replace("%SENDER%", sender.getName())
@@ -49,17 +44,26 @@ public class Whispers implements Listener {
         );
     }
 
+    /** Replace the color placeholders of a whisper format, e.g. %RED% */
+    static String resolveColorPlaceholders(String format) {
+        for (Map.Entry<String, String> entry : COLOR_PLACEHOLDER_MAP.entrySet()) {
+            format = format.replace(entry.getKey(), getDirectColorCode(entry.getValue()));
+        }
+        return format;
+    }
+
     /** Run unicode + blacklist checks */
     private boolean isMessageAllowed(Player sender, String message) {
-        if (plugin.getConfig().getBoolean("ChatCo.blockUnicodeText", false) && containsUnicode(message)) {
-            if (plugin.getConfig().getBoolean("ChatCo.debugUnicodeBlocking", false)) {
+        ChatConfig config = plugin.getChatConfig();
+        if (config.blockUnicodeText() && containsUnicode(message)) {
+            if (config.debugUnicodeBlocking()) {
                 plugin.getLogger().info("Blocked unicode whisper from " + sender.getName() + ": " + message);
             }
             return false;
         }
 
         if (plugin.getBlacklistFilter().containsBlacklistedWord(message)) {
-            if (plugin.getConfig().getBoolean("ChatCo.debugBlacklistBlocking", false)) {
+            if (config.debugBlacklistBlocking()) {
                 plugin.getLogger().info("Blocked blacklisted whisper from " + sender.getName() + ": " + message);
             }
             return false;
@@ -68,13 +72,11 @@ public class Whispers implements Listener {
         return true;
     }
 
-    /** Send private message with full handling */
+    /** Send private message with full handling; callers check isMessageAllowed first */
     private void sendPrivateMessage(Player sender, Player receiver, String message) {
-        if (!isMessageAllowed(sender, message)) return;
-
         ChatPlayer target = plugin.getChatPlayer(receiver);
         boolean doNotSend = target != null && target.tellsDisabled;
-        boolean isIgnoring = target != null && target.isIgnored(sender.getName());
+        boolean isIgnoring = target != null && target.isIgnored(sender.getUniqueId());
 
         TextComponent senderMessage = whisperFormat(true, sender, receiver);
         TextComponent receiverMessage = whisperFormat(false, sender, receiver);
@@ -94,9 +96,10 @@ public class Whispers implements Listener {
 
         sender.sendMessage(senderMessage);
 
-        if (isIgnoring && plugin.getConfig().getBoolean("ChatCo.ignoreMessageEnabled", true)) {
+        ChatConfig config = plugin.getChatConfig();
+        if (isIgnoring && config.ignoreMessageEnabled()) {
             sender.sendMessage(componentFromLegacyText("&c" + receiver.getName() + " is ignoring you."));
-        } else if (doNotSend && plugin.getConfig().getBoolean("ChatCo.chatDisabledMessageEnabled", true)) {
+        } else if (doNotSend && config.chatDisabledMessageEnabled()) {
             sender.sendMessage(componentFromLegacyText("&c" + receiver.getName() + "'s chat is disabled."));
         } else if (!doNotSend && !isIgnoring && !isBlackholed) {
             receiver.sendMessage(receiverMessage);
@@ -104,12 +107,12 @@ public class Whispers implements Listener {
         }
 
         String logText = (doNotSend || isIgnoring ? "***WAS NOT SENT*** " : "") + message;
-        if (plugin.getConfig().getBoolean("ChatCo.whisperLog", false)) {
+        if (config.whisperLog()) {
             whisperLog(logText, sender.getName());
         }
-        if (plugin.getConfig().getBoolean("ChatCo.whisperMonitoring", false) && !BlackholeModule.isPlayerHidden(sender)) {
+        if (config.whisperMonitoring() && !BlackholeModule.isPlayerHidden(sender)) {
             plugin.getLogger().log(Level.INFO, "{0}: {1}", new Object[]{sender.getName(), logText});
-        } else if (plugin.getConfig().getBoolean("ChatCo.chatToConsole", true) && !BlackholeModule.isPlayerHidden(sender)) {
+        } else if (config.chatToConsole() && !BlackholeModule.isPlayerHidden(sender)) {
             plugin.getLogger().log(Level.INFO, "[WHISPER] {0} -> {1}: {2}",
                     new Object[]{sender.getName(), receiver.getName(), stripColor(logText)});
         }
@@ -197,16 +200,30 @@ public class Whispers implements Listener {
         String[] args = event.getMessage().split(" ");
         String cmdName = args[0].substring(1).toLowerCase();
 
-        if (plugin.getConfig().getBoolean("ChatCo.lastCommand", true) &&
+        ChatConfig config = plugin.getChatConfig();
+
+        if (config.lastCommand() &&
             (cmdName.equals("l") || cmdName.equals("last"))) {
+            if (isRateLimited(sender, event)) return;
             handleLastCommand(sender, args, event);
 
-        } else if (plugin.getConfig().getBoolean("ChatCo.replyCommands", true) &&
+        } else if (config.replyCommands() &&
                    (cmdName.equals("r") || cmdName.equals("reply"))) {
+            if (isRateLimited(sender, event)) return;
             handleReplyCommand(sender, args, event);
 
         } else if (Arrays.asList("tell", "msg", "t", "w", "whisper", "pm").contains(cmdName)) {
+            if (isRateLimited(sender, event)) return;
             handleWhisperCommand(sender, args, event);
         }
     }
+
+    /** Take a token from the sender's whisper bucket, cancelling the command if it is empty */
+    private boolean isRateLimited(Player sender, PlayerCommandPreprocessEvent event) {
+        if (plugin.getWhisperRateLimiter().tryAcquire(sender)) return false;
+
+        sender.sendMessage(componentFromLegacyText("&cYou are sending messages too fast!"));
+        event.setCancelled(true);
+        return true;
+    }
 }
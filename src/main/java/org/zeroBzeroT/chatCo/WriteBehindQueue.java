@@ -0,0 +1,114 @@
+package org.zeroBzeroT.chatCo;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs disk writes on a single background thread so commands never wait for I/O.
+ * <p>
+ * Writes are keyed; a write submitted for a key that is still pending replaces the older one and
+ * moves to the end of the queue, so a burst of edits to the same thing costs one write. Pending
+ * writes are flushed in batches once a second or as soon as enough of them pile up.
+ */
+public class WriteBehindQueue {
+    private static final long FLUSH_INTERVAL_MS = 1000;
+    private static final int FLUSH_BATCH_SIZE = 256;
+
+    private final Logger logger;
+    private final ScheduledExecutorService writer;
+    private final Map<Object, PendingWrite> pending = new LinkedHashMap<>();
+    // Held while a batch runs so batches never overlap and older writes cannot land last
+    private final Object flushLock = new Object();
+    private boolean flushScheduled;
+
+    public WriteBehindQueue(Logger logger) {
+        this.logger = logger;
+        this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ChatCo-Writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.writer.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queue a write, replacing a pending write with the same key
+     *
+     * @param key   - identifies what is written; equal keys coalesce
+     * @param write - the I/O to perform on the writer thread
+     */
+    public void submit(Object key, PendingWrite write) {
+        synchronized (pending) {
+            // Re-insert so the newest write for a key keeps its place relative to other keys
+            pending.remove(key);
+            pending.put(key, write);
+
+            if (pending.size() >= FLUSH_BATCH_SIZE && !flushScheduled) {
+                flushScheduled = true;
+                try {
+                    writer.execute(this::flush);
+                } catch (RejectedExecutionException e) {
+                    // Shutting down; close() drains what is left
+                    flushScheduled = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Run every pending write on the calling thread
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            List<Map.Entry<Object, PendingWrite>> batch;
+            synchronized (pending) {
+                flushScheduled = false;
+                if (pending.isEmpty()) return;
+                batch = new ArrayList<>(pending.size());
+                for (Map.Entry<Object, PendingWrite> entry : pending.entrySet()) {
+                    batch.add(Map.entry(entry.getKey(), entry.getValue()));
+                }
+                pending.clear();
+            }
+
+            for (Map.Entry<Object, PendingWrite> entry : batch) {
+                try {
+                    entry.getValue().write();
+                } catch (IOException | RuntimeException e) {
+                    logger.log(Level.SEVERE, "Failed to persist " + entry.getKey(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop the writer thread after writing out everything that is still queued
+     */
+    public void close() {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warning("Timed out waiting for the writer thread");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Whatever was submitted after the last scheduled flush
+        flush();
+    }
+
+    @FunctionalInterface
+    public interface PendingWrite {
+        void write() throws IOException;
+    }
+}
@@ -0,0 +1,144 @@
+package org.zeroBzeroT.chatCo.build;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.zeroBzeroT.chatCo.Skeletonizer;
+
+import com.ibm.icu.text.SpoofChecker;
+import com.ibm.icu.util.VersionInfo;
+
+/**
+ * Build-time tool: extracts the confusables mapping from ICU into the binary table the plugin
+ * loads at runtime (see Skeletonizer), so ICU does not have to be shipped.
+ * <p>
+ * Runs from the process-classes phase and is not part of the plugin jar. For every code point that
+ * survives NFD, it records the skeleton ICU computes for it when that differs from the code point.
+ * <p>
+ * The written table is then read back through Skeletonizer and its skeletons compared with ICU's,
+ * for every code point and for random strings; any difference fails the build.
+ * <p>
+ * Format, big-endian: magic, version, entry count, the sorted code points, for each entry the end
+ * offset of its prototype in the character data, the character data length and the UTF-16
+ * character data.
+ */
+public class ConfusablesTableGenerator {
+    public static final int MAGIC = 0x43434346; // "CCCF"
+    public static final int VERSION = 1;
+
+    // Random strings checked against ICU after every code point, to cover combining sequences
+    private static final int VERIFY_STRINGS = 200000;
+    private static final int VERIFY_MAX_LENGTH = 8;
+    private static final int REPORTED_MISMATCHES = 10;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("Usage: ConfusablesTableGenerator <output file>");
+        }
+
+        SpoofChecker spoofChecker = new SpoofChecker.Builder().build();
+        List<Integer> codePoints = new ArrayList<>();
+        StringBuilder data = new StringBuilder();
+        List<Integer> ends = new ArrayList<>();
+
+        for (int cp = 0; cp <= Character.MAX_CODE_POINT; cp++) {
+            if (cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE) continue;
+
+            String source = new String(Character.toChars(cp));
+            // The runtime decomposes with java.text.Normalizer first, so these never get looked up
+            if (!Normalizer.isNormalized(source, Normalizer.Form.NFD)) continue;
+
+            String prototype = spoofChecker.getSkeleton(source);
+            if (prototype.equals(source)) continue;
+
+            codePoints.add(cp);
+            data.append(prototype);
+            ends.add(data.length());
+        }
+
+        Path output = Path.of(args[0]);
+        Files.createDirectories(output.toAbsolutePath().getParent());
+
+        try (OutputStream stream = Files.newOutputStream(output);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(codePoints.size());
+            for (int cp : codePoints) out.writeInt(cp);
+            for (int end : ends) out.writeInt(end);
+            out.writeInt(data.length());
+            out.writeChars(data.toString());
+        }
+
+        System.out.printf("Wrote %d confusables from ICU %s (%d bytes) to %s%n",
+                codePoints.size(), VersionInfo.ICU_VERSION, Files.size(output), output);
+
+        verify(output, spoofChecker, codePoints);
+    }
+
+    /**
+     * Check the table against ICU: for any text the runtime skeleton must equal ICU's skeleton of
+     * the text lowercased and NFKC-normalized, which the runtime does before the mapping.
+     *
+     * @param mapped - code points in the table, used to build the random strings
+     * @throws IllegalStateException listing the first mismatches if there are any
+     */
+    private static void verify(Path table, SpoofChecker spoofChecker, List<Integer> mapped) throws IOException {
+        Skeletonizer skeletonizer = new Skeletonizer(Files.newInputStream(table));
+        List<String> mismatches = new ArrayList<>();
+        int checked = 0;
+
+        for (int cp = 0; cp <= Character.MAX_CODE_POINT; cp++) {
+            if (cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE) continue;
+            compare(new String(Character.toChars(cp)), skeletonizer, spoofChecker, mismatches);
+            checked++;
+        }
+
+        // Mapped code points, combining marks and ASCII in any order; fixed seed so a failure reproduces
+        Random random = new Random(0x5EED);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < VERIFY_STRINGS; i++) {
+            text.setLength(0);
+            int length = 1 + random.nextInt(VERIFY_MAX_LENGTH);
+            for (int j = 0; j < length; j++) {
+                text.appendCodePoint(switch (random.nextInt(3)) {
+                    case 0 -> mapped.get(random.nextInt(mapped.size()));
+                    case 1 -> 0x300 + random.nextInt(0x70);
+                    default -> 0x20 + random.nextInt(0x5F);
+                });
+            }
+            compare(text.toString(), skeletonizer, spoofChecker, mismatches);
+            checked++;
+        }
+
+        if (!mismatches.isEmpty()) {
+            throw new IllegalStateException(String.format("%d of %d skeletons differ from ICU %s, first ones:%n%s",
+                    mismatches.size(), checked, VersionInfo.ICU_VERSION,
+                    String.join(System.lineSeparator(), mismatches.subList(0, Math.min(REPORTED_MISMATCHES, mismatches.size())))));
+        }
+
+        System.out.printf("Checked %d skeletons against ICU %s%n", checked, VersionInfo.ICU_VERSION);
+    }
+
+    private static void compare(String text, Skeletonizer skeletonizer, SpoofChecker spoofChecker, List<String> mismatches) {
+        String expected = spoofChecker.getSkeleton(Normalizer.normalize(text.toLowerCase(), Normalizer.Form.NFKC));
+        String actual = skeletonizer.skeleton(text);
+        if (!expected.equals(actual)) {
+            mismatches.add(escape(text) + ": ICU " + escape(expected) + ", table " + escape(actual));
+        }
+    }
+
+    private static String escape(String text) {
+        StringBuilder escaped = new StringBuilder();
+        text.codePoints().forEach(cp -> escaped.append(String.format("\\u{%X}", cp)));
+        return escaped.toString();
+    }
+}